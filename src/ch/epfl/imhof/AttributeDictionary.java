@@ -0,0 +1,145 @@
+package ch.epfl.imhof;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Classe représentant le dictionnaire, partagé par toutes
+ * les entités, des clefs et des valeurs d'attributs. Chaque
+ * chaîne distincte y reçoit un petit entier (son indice) une
+ * fois pour toutes, ce qui permet de stocker les attributs
+ * sous forme d'entiers et de comparer des clefs et des valeurs
+ * par simple égalité d'entiers. Le dictionnaire peut être
+ * utilisé par plusieurs fils d'exécution à la fois.
+ *
+ * Comme le dictionnaire ne rétrécit jamais, seules les clefs
+ * y sont ajoutées par Attributes, ainsi que les valeurs des
+ * clefs déclarées avec internValuesOf, dont les valeurs sont
+ * comparées par le programme (les autres valeurs, comme les
+ * noms, sont gardées telles quelles par leurs entités). Sa
+ * taille dépend ainsi du programme et non des cartes lues
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+public final class AttributeDictionary {
+    private static final ConcurrentHashMap<String, Integer> INDICES = new ConcurrentHashMap<>();
+    private static final Object LOCK = new Object();
+    private static volatile String[] strings = new String[1024];
+    private static int size = 0;
+    // Vrai pour les indices des clefs dont les valeurs sont ajoutées au dictionnaire
+    private static volatile boolean[] internsValues = new boolean[0];
+
+    private AttributeDictionary() {}
+
+    /**
+     * Méthode statique qui retourne l'indice de la chaîne
+     * donnée, en l'ajoutant au dictionnaire si nécessaire
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param string
+     *      la chaîne
+     *
+     * @throws NullPointerException
+     *      si la chaîne est nulle
+     *
+     * @return index
+     *      l'indice de la chaîne
+     */
+    public static int index(String string) {
+        Integer index = INDICES.get(string);
+        if (index != null) {
+            return index;
+        }
+        synchronized (LOCK) {
+            index = INDICES.get(string);
+            if (index != null) {
+                return index;
+            }
+            if (size == strings.length) {
+                strings = Arrays.copyOf(strings, 2 * size);
+            }
+            strings[size] = string;
+            // L'indice n'est publié qu'une fois la chaîne stockée
+            INDICES.put(string, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Méthode statique qui retourne l'indice de la chaîne
+     * donnée si elle est dans le dictionnaire, et -1 sinon
+     * (sans l'y ajouter)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param string
+     *      la chaîne
+     *
+     * @return index
+     *      l'indice de la chaîne, ou -1
+     */
+    public static int indexIfPresent(String string) {
+        Integer index = (string == null) ? null : INDICES.get(string);
+        return (index == null) ? -1 : index;
+    }
+
+    /**
+     * Méthode statique qui déclare que les valeurs de la clef
+     * donnée doivent être ajoutées au dictionnaire lorsque des
+     * attributs ayant cette clef sont construits
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param key
+     *      la clef
+     */
+    public static void internValuesOf(String key) {
+        int index = index(key);
+        synchronized (LOCK) {
+            if (!internsValuesOf(index)) {
+                boolean[] flags = Arrays.copyOf(internsValues, Math.max(index + 1, internsValues.length));
+                flags[index] = true;
+                internsValues = flags;
+            }
+        }
+    }
+
+    /**
+     * Méthode statique qui teste si les valeurs de la clef
+     * ayant l'indice donné sont ajoutées au dictionnaire
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param keyIndex
+     *      l'indice de la clef
+     *
+     * @return le résultat du test
+     */
+    public static boolean internsValuesOf(int keyIndex) {
+        boolean[] flags = internsValues;
+        return (keyIndex >= 0) && (keyIndex < flags.length) && flags[keyIndex];
+    }
+
+    /**
+     * Méthode statique qui retourne la chaîne ayant
+     * l'indice donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param index
+     *      l'indice de la chaîne
+     *
+     * @return strings[index]
+     *      la chaîne
+     */
+    public static String string(int index) {
+        return strings[index];
+    }
+}
@@ -1,19 +1,27 @@
 package ch.epfl.imhof;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Set;
 
 /**
  * Classe qui représente un ensemble de
- * paires clef/valeur
+ * paires clef/valeur. Les clefs sont stockées sous
+ * forme de leurs indices dans le dictionnaire partagé
+ * des attributs, de même que les valeurs des clefs
+ * dont le dictionnaire garde les valeurs ; les autres
+ * valeurs sont stockées telles quelles
  * 
  * @author Raja Soufi (247680)
  * @author Andrey Batasov (250149)
  */
 public final class Attributes {
-    private final Map<String, String> ATTRIBUTES;
+    private static final int[] NO_PAIRS = new int[0];
+    private static final String[] NO_VALUES = new String[0];
+    private final int[] PAIRS;
+    private final String[] VALUES;
     
     /**
      * Construit un ensemble de paires clef/valeur
@@ -25,7 +33,21 @@ public final class Attributes {
      *      un ensemble de paires clef/valeur
      */
     public Attributes(Map<String, String> attributes) {
-        ATTRIBUTES = Collections.unmodifiableMap(new HashMap<String, String>(attributes));
+        Builder builder = new Builder();
+        for (Map.Entry<String, String> e : attributes.entrySet()) {
+            builder.put(e.getKey(), e.getValue());
+        }
+        Attributes built = builder.build();
+        PAIRS = built.PAIRS;
+        VALUES = built.VALUES;
+    }
+
+    // Les paires sont stockées à plat (clef, valeur, clef, valeur...),
+    // triées par indice de clef dans le dictionnaire des attributs ;
+    // une valeur v négative désigne la chaîne VALUES[-v - 1]
+    private Attributes(int[] pairs, String[] values) {
+        PAIRS = pairs;
+        VALUES = values;
     }
     
     /**
@@ -35,11 +57,11 @@ public final class Attributes {
      * @author Raja Soufi (247680)
      * @author Andrey Batasov (250149)
      * 
-     * @return ATTRIBUTES.isEmpty()
+     * @return (PAIRS.length == 0)
      *      la valeur booléenne du test
      */
     public boolean isEmpty() {
-        return ATTRIBUTES.isEmpty();
+        return PAIRS.length == 0;
     }
     
     /**
@@ -52,11 +74,77 @@ public final class Attributes {
      * @param key
      *      la clef qu'on veut tester
      * 
-     * @return ATTRIBUTES.containsKey(key)
+     * @return contains(AttributeDictionary.indexIfPresent(key))
      *      la valeur booléenne du test
      */
     public boolean contains(String key) {
-        return ATTRIBUTES.containsKey(key);
+        return contains(AttributeDictionary.indexIfPresent(key));
+    }
+
+    /**
+     * Méthode qui teste si l'ensemble contient la clef
+     * ayant l'indice donné dans le dictionnaire des attributs
+     * 
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @param keyIndex
+     *      l'indice de la clef qu'on veut tester
+     * 
+     * @return (position(keyIndex) >= 0)
+     *      la valeur booléenne du test
+     */
+    public boolean contains(int keyIndex) {
+        return position(keyIndex) >= 0;
+    }
+
+    /**
+     * Méthode qui retourne l'ensemble des clefs
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return keys
+     *      l'ensemble non modifiable des clefs
+     */
+    public Set<String> keys() {
+        Set<String> keys = new HashSet<String>();
+        for (int i = 0 ; i < PAIRS.length ; i += 2) {
+            keys.add(AttributeDictionary.string(PAIRS[i]));
+        }
+        return Collections.unmodifiableSet(keys);
+    }
+    
+    /**
+     * Méthode qui retourne le nombre de paires
+     * clef/valeur de l'ensemble
+     * 
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @return PAIRS.length / 2
+     *      le nombre de paires
+     */
+    public int size() {
+        return PAIRS.length / 2;
+    }
+
+    /**
+     * Méthode qui retourne l'indice, dans le dictionnaire
+     * des attributs, de la clef de la paire d'indice donné
+     * (les paires sont triées par indice de clef)
+     * 
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @param i
+     *      l'indice de la paire, entre 0 et size() exclu
+     * 
+     * @return PAIRS[2 * i]
+     *      l'indice de la clef de la paire
+     */
+    public int keyIndexAt(int i) {
+        return PAIRS[2 * i];
     }
     
     /**
@@ -71,11 +159,12 @@ public final class Attributes {
      *      la clef dont on veut obtenir la
      *      valeur
      * 
-     * @return ATTRIBUTES.get(key)
+     * @return value(position(...))
      *      la valeur associée à la clef ou null
      */
     public String get(String key) {
-        return ATTRIBUTES.get(key);
+        int i = position(AttributeDictionary.indexIfPresent(key));
+        return (i < 0) ? null : value(i);
     }
     
     /**
@@ -93,12 +182,13 @@ public final class Attributes {
      * @param defaultValue
      *      la valeur par défaut
      * 
-     * @return ATTRIBUTES.getOrDefault(key, defaultValue)
+     * @return value(position(...))
      *      la valeur associée à la clef ou la
      *      valeur par défaut
      */
     public String get(String key, String defaultValue) {
-        return ATTRIBUTES.getOrDefault(key, defaultValue);
+        int i = position(AttributeDictionary.indexIfPresent(key));
+        return (i < 0) ? defaultValue : value(i);
     }
     
     /**
@@ -116,22 +206,88 @@ public final class Attributes {
      * @param defaultValue
      *      la valeur par défaut
      * 
-     * @return Integer.parseInt(ATTRIBUTES.get(key))
+     * @return Integer.parseInt(get(key))
      *      la valeur associée à la clef
      * @return defaultValue
      *      la valeur par défaut
      */
     public int get(String key, int defaultValue) {
+        int i = position(AttributeDictionary.indexIfPresent(key));
+        if (i < 0) {
+            return defaultValue;
+        }
         try {
-            if (ATTRIBUTES.containsKey(key)) {
-                return Integer.parseInt(ATTRIBUTES.get(key));
-            } else {
-                return defaultValue;
-            }
+            return Integer.parseInt(value(i));
         } catch (NumberFormatException e) {
             return defaultValue;
         }
     }
+
+    /**
+     * Méthode qui retourne l'indice, dans le dictionnaire
+     * des attributs, de la valeur associée à une certaine
+     * clef, ou -1 si l'ensemble ne contient pas cette clef
+     * ou si la valeur n'est pas dans le dictionnaire
+     * 
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @param key
+     *      la clef dont on veut obtenir la
+     *      valeur
+     * 
+     * @return valueIndex(AttributeDictionary.indexIfPresent(key))
+     *      l'indice de la valeur associée à la clef ou -1
+     */
+    public int valueIndex(String key) {
+        return valueIndex(AttributeDictionary.indexIfPresent(key));
+    }
+
+    /**
+     * Méthode qui retourne l'indice, dans le dictionnaire
+     * des attributs, de la valeur associée à la clef ayant
+     * l'indice donné, ou -1 si l'ensemble ne contient pas
+     * cette clef ou si la valeur n'est pas dans le dictionnaire
+     * 
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @param keyIndex
+     *      l'indice de la clef dont on veut obtenir
+     *      la valeur
+     * 
+     * @return PAIRS[i + 1]
+     *      l'indice de la valeur associée à la clef ou -1
+     */
+    public int valueIndex(int keyIndex) {
+        int i = position(keyIndex);
+        if (i < 0) {
+            return -1;
+        }
+        int value = PAIRS[i + 1];
+        return (value >= 0) ? value : AttributeDictionary.indexIfPresent(VALUES[-value - 1]);
+    }
+
+    // Retourne la position, dans PAIRS, de la clef ayant l'indice donné, ou -1
+    private int position(int keyIndex) {
+        if (keyIndex < 0) {
+            return -1;
+        }
+        // Les ensembles d'attributs sont petits : une recherche
+        // linéaire dans le tableau trié est la plus rapide
+        for (int i = 0 ; i < PAIRS.length ; i += 2) {
+            if (PAIRS[i] >= keyIndex) {
+                return (PAIRS[i] == keyIndex) ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    // Retourne la valeur de la paire se trouvant à la position donnée
+    private String value(int i) {
+        int value = PAIRS[i + 1];
+        return (value >= 0) ? AttributeDictionary.string(value) : VALUES[-value - 1];
+    }
     
     /**
      * Méthode qui supprime toutes les paires
@@ -146,17 +302,29 @@ public final class Attributes {
      *      l'ensemble des clefs dont on veut garder
      *      les paires clef/valeur
      * 
-     * @return attributes.build()
+     * @return new Attributes(pairs, values)
      *      l'ensemble filtré des paires clef/valeur
      */
     public Attributes keepOnlyKeys(Set<String> keysToKeep) {
-        Builder attributes = new Builder();
-        for (Map.Entry<String, String> e: ATTRIBUTES.entrySet()) {
-            if (keysToKeep.contains(e.getKey())) {
-                attributes.put(e.getKey(), e.getValue());
+        int[] pairs = new int[PAIRS.length];
+        String[] values = new String[VALUES.length];
+        int length = 0;
+        int valuesCount = 0;
+        for (int i = 0 ; i < PAIRS.length ; i += 2) {
+            if (keysToKeep.contains(AttributeDictionary.string(PAIRS[i]))) {
+                pairs[length++] = PAIRS[i];
+                if (PAIRS[i + 1] >= 0) {
+                    pairs[length++] = PAIRS[i + 1];
+                } else {
+                    values[valuesCount++] = VALUES[-PAIRS[i + 1] - 1];
+                    pairs[length++] = -valuesCount;
+                }
             }
         }
-        return attributes.build();
+        if (length == PAIRS.length) {
+            return this;
+        }
+        return new Attributes(length == 0 ? NO_PAIRS : Arrays.copyOf(pairs, length), valuesCount == 0 ? NO_VALUES : Arrays.copyOf(values, valuesCount));
     }
     
     /**
@@ -168,7 +336,9 @@ public final class Attributes {
      * @author Andrey Batasov (250149)
      */
     public static final class Builder {
-        private final Map<String, String> ATTRIBUTES;
+        private int[] pairs;
+        private String[] values;
+        private int length;
         
         /**
          * Construit progressivement l'ensemble
@@ -178,11 +348,16 @@ public final class Attributes {
          * @author Andrey Batasov (250149)
          */
         public Builder() {
-            ATTRIBUTES = new HashMap<String, String>();
+            pairs = NO_PAIRS;
+            values = NO_VALUES;
+            length = 0;
         }
         
         /**
          * Méthode qui ajoute une nouvelle paire clef/valeur
+         * (en remplaçant la valeur précédente si la clef est
+         * déjà présente). Les paires dont la clef ou la valeur
+         * est nulle sont ignorées
          * 
          * @author Raja Soufi (247680)
          * @author Andrey Batasov (250149)
@@ -193,7 +368,29 @@ public final class Attributes {
          *      la valeur
          */
         public void put(String key, String value) {
-            ATTRIBUTES.put(key, value);
+            if ((key == null) || (value == null)) {
+                return;
+            }
+            int keyIndex = AttributeDictionary.index(key);
+            int i = 0;
+            while ((i < length) && (pairs[i] != keyIndex)) {
+                i += 2;
+            }
+            if (i == length) {
+                if (length == pairs.length) {
+                    pairs = Arrays.copyOf(pairs, Math.max(8, 2 * length));
+                    values = Arrays.copyOf(values, pairs.length / 2);
+                }
+                pairs[length++] = keyIndex;
+                length++;
+            }
+            if (AttributeDictionary.internsValuesOf(keyIndex)) {
+                pairs[i + 1] = AttributeDictionary.index(value);
+            } else {
+                // Chaque paire a sa place dans values, selon sa position
+                values[i / 2] = value;
+                pairs[i + 1] = -1;
+            }
         }
         
         /**
@@ -204,11 +401,38 @@ public final class Attributes {
          * @author Raja Soufi (247680)
          * @author Andrey Batasov (250149)
          * 
-         * @return new Attributes(ATTRIBUTES)
+         * @return new Attributes(pairs, values)
          *      retourne un ensemble construit de paires clef/valeur
          */
         public Attributes build() {
-            return new Attributes(ATTRIBUTES);
+            if (length == 0) {
+                return new Attributes(NO_PAIRS, NO_VALUES);
+            }
+            // Les paires sont triées par clef ; les valeurs gardées telles
+            // quelles sont numérotées dans l'ordre des paires triées
+            long[] sorted = new long[length / 2];
+            int valuesCount = 0;
+            for (int i = 0 ; i < sorted.length ; i++) {
+                sorted[i] = ((long)pairs[2 * i] << 32) | i;
+                if (pairs[2 * i + 1] < 0) {
+                    valuesCount++;
+                }
+            }
+            Arrays.sort(sorted);
+            int[] result = new int[length];
+            String[] resultValues = (valuesCount == 0) ? NO_VALUES : new String[valuesCount];
+            valuesCount = 0;
+            for (int i = 0 ; i < sorted.length ; i++) {
+                int pair = (int)sorted[i];
+                result[2 * i] = pairs[2 * pair];
+                if (pairs[2 * pair + 1] >= 0) {
+                    result[2 * i + 1] = pairs[2 * pair + 1];
+                } else {
+                    resultValues[valuesCount++] = values[pair];
+                    result[2 * i + 1] = -valuesCount;
+                }
+            }
+            return new Attributes(result, resultValues);
         }
     }
 }
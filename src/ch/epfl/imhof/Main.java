@@ -6,6 +6,13 @@ import static java.lang.Double.parseDouble;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.imageio.ImageIO;
 
@@ -18,7 +25,10 @@ import ch.epfl.imhof.dem.Earth;
 import ch.epfl.imhof.dem.HGTDigitalElevationModel;
 import ch.epfl.imhof.dem.ReliefShader;
 import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.osm.OSMFilter;
+import ch.epfl.imhof.osm.OSMMap;
 import ch.epfl.imhof.osm.OSMMapReader;
+import ch.epfl.imhof.osm.OSMPBFReader;
 import ch.epfl.imhof.osm.OSMToGeoTransformer;
 import ch.epfl.imhof.painting.Color;
 import ch.epfl.imhof.painting.Java2DCanvas;
@@ -36,6 +46,8 @@ import ch.epfl.imhof.projection.Projection;
  * @author Andrey Batasov (250149)
  */
 public final class Main {
+    // Marge (relative à la taille de la carte) de la zone lue dans le fichier OSM
+    private static final double BOUNDING_BOX_MARGIN = 0.1;
 
     /**
      * Méthode statique qui constitue le programme principal
@@ -46,7 +58,8 @@ public final class Main {
      *   1 - Le fichier OSM portant le nom passé en paramètre est lu
      *       afin de créer les entités OSM, des types définis dans ce
      *       projet, correspondants aux éléments de la carte décrite
-     *       par le fichier lu
+     *       par le fichier lu (seuls les chemins et les relations qui
+     *       touchent la zone de la carte sont gardés)
      *
      *   2 - Les entités OSM créées sont transformées en éléments
      *       géométriques, des types définis dans ce projet, et stockées
@@ -62,7 +75,8 @@ public final class Main {
      *       les dimensions calculées
      *
      *   5 - Le peintre suisse est utilisé pour dessiner les éléments
-     *       géométriques de la carte sur la toile créée
+     *       géométriques de la carte sur la toile créée, par bandes
+     *       dessinées en parallèle
      *
      *   6 - Un générateur de reliefs ombrés colorés est créé avec les
      *       données passées en paramètre, et utilisé pour créer, sous
@@ -94,8 +108,10 @@ public final class Main {
         double blLat = toRadians(bottom);
         double trLat = toRadians(top);
         double res = (int)Double.parseDouble(args[6]);
-        Point bl = projection.project(new PointGeo(toRadians(left), blLat));
-        Point tr = projection.project(new PointGeo(toRadians(right), trLat));
+        PointGeo blGeo = new PointGeo(toRadians(left), blLat);
+        PointGeo trGeo = new PointGeo(toRadians(right), trLat);
+        Point bl = projection.project(blGeo);
+        Point tr = projection.project(trGeo);
         int h = (int)round(res * (trLat - blLat) * Earth.RADIUS / (0.0254 * scale));
         int w = (int)round((tr.x() - bl.x()) * h / (tr.y() - bl.y()));
 
@@ -103,7 +119,23 @@ public final class Main {
 
         Java2DCanvas canvas = new Java2DCanvas(bl, tr, w, h, res, Color.WHITE);
         Painter painter = paintingConfiguration.painter();
-        painter.drawMap(new OSMToGeoTransformer(projection).transform(OSMMapReader.readOSMFile(args[0], true)), canvas);
+        boolean lowMemory = isInArgs(args, "low-memory");
+        // Seuls les attributs dont le peintre et le transformateur ont besoin sont lus
+        Set<String> attributeKeys = OSMToGeoTransformer.attributeKeys(painter.attributeKeys());
+        Map geoMap;
+        if (isInArgs(args, "cache")) {
+            // Seuls les éléments proches de la zone dessinée sont gardés, comme à la lecture
+            double margin = BOUNDING_BOX_MARGIN * max(tr.x() - bl.x(), tr.y() - bl.y());
+            geoMap = readCachedMap(args[0], projection, lowMemory, attributeKeys).within(new Point(bl.x() - margin, bl.y() - margin), new Point(tr.x() + margin, tr.y() + margin));
+        } else {
+            OSMFilter filter = (lowMemory ? OSMToGeoTransformer.filter() : new OSMFilter()).withAttributeKeys(attributeKeys);
+            double margin = BOUNDING_BOX_MARGIN * max(trGeo.longitude() - blGeo.longitude(), trLat - blLat);
+            geoMap = transform(readOSMMap(args[0], filter.withBoundingBox(blGeo, trGeo, margin)), projection);
+        }
+        if (isInArgs(args, "simplify")) {
+            geoMap = MapSimplifier.forDrawing(bl.x(), tr.x(), w).simplify(geoMap);
+        }
+        canvas.drawMap(painter, geoMap, ForkJoinPool.commonPool());
         BufferedImage image = canvas.image();
         BufferedImage relief = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
         // Code BONUS!
@@ -173,6 +205,39 @@ public final class Main {
         ImageIO.write(map, "png", new File(args[7]));
     }
 
+    private static Map readCachedMap(String fileName, Projection projection, boolean lowMemory, Set<String> attributeKeys) throws Exception {
+        // Toute la carte est mise en cache, afin de pouvoir en dessiner
+        // n'importe quelle partie lors des exécutions suivantes
+        String variant = (lowMemory ? "low-memory" : "all") + new TreeSet<String>(attributeKeys);
+        Path cacheFile = Paths.get(System.getProperty("java.io.tmpdir"), "imhof-" + MapCache.key(fileName, projection, variant) + ".map");
+        if (Files.isRegularFile(cacheFile)) {
+            try {
+                return MapCache.read(cacheFile);
+            } catch (IOException e) {
+                System.out.println("Warning: Ignoring invalid map cache " + cacheFile + ".");
+            }
+        }
+        Map geoMap = transform(readOSMMap(fileName, (lowMemory ? OSMToGeoTransformer.filter() : new OSMFilter()).withAttributeKeys(attributeKeys)), projection);
+        MapCache.write(geoMap, cacheFile);
+        return geoMap;
+    }
+
+    private static Map transform(OSMMap osmMap, Projection projection) {
+        OSMToGeoTransformer transformer = new OSMToGeoTransformer(projection);
+        Map geoMap = transformer.transform(osmMap, ForkJoinPool.commonPool());
+        if (transformer.unclosableRings() > 0) {
+            System.out.println("Warning: Ignoring " + transformer.unclosableRings() + " unclosable relation ring(s).");
+        }
+        return geoMap;
+    }
+
+    private static OSMMap readOSMMap(String fileName, OSMFilter filter) throws Exception {
+        if (fileName.endsWith(".pbf")) {
+            return OSMPBFReader.readPBFFile(fileName, filter);
+        }
+        return OSMMapReader.scanOSMFile(fileName, true, filter);
+    }
+
     private static boolean isInArgs(String[] args, String s) {
         for (int i = 0 ; i < args.length ; i++) {
             if (s.equals(args[i])) {
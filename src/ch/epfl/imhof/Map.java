@@ -1,14 +1,22 @@
 package ch.epfl.imhof;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Collections;
+import java.util.RandomAccess;
 
+import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
 
 /**
- * Classe représentant une carte
+ * Classe représentant une carte. Un index spatial (un R-arbre
+ * par type d'éléments) est construit lors de la première
+ * recherche par zone, et réutilisé par les suivantes. De même,
+ * la couche de chaque élément (la valeur entière de son
+ * attribut "layer", 0 par défaut) n'est calculée qu'une fois,
+ * lors de la première demande
  * 
  * @author Andrey Batasov (250149)
  * @author Raja Soufi (247680)
@@ -17,6 +25,12 @@ import ch.epfl.imhof.geometry.Polygon;
 public final class Map {
     private final List<Attributed<PolyLine>> POLYLINES;
     private final List<Attributed<Polygon>> POLYGONS;
+    private PackedRTree polyLineIndex;
+    private PackedRTree polygonIndex;
+    // Les couches des éléments, calculées au besoin ; deux calculs
+    // simultanés donnent le même résultat, l'un des deux est gardé
+    private volatile int[] polyLineLayers;
+    private volatile int[] polygonLayers;
     
     /**
      * Construit une carte
@@ -34,6 +48,22 @@ public final class Map {
         POLYGONS = Collections.unmodifiableList(new ArrayList<Attributed<Polygon>>(polygons));
     }
     
+    // Construit une carte partageant les listes (non modifiables) et
+    // les couches données
+    private Map(List<Attributed<PolyLine>> polyLines, List<Attributed<Polygon>> polygons, int[] polyLineLayers, int[] polygonLayers) {
+        POLYLINES = polyLines;
+        POLYGONS = polygons;
+        this.polyLineLayers = polyLineLayers;
+        this.polygonLayers = polygonLayers;
+    }
+    
+    // Construit la vue de la carte donnée ne contenant que les éléments
+    // d'indices donnés ; ses couches sont extraites de celles de la carte
+    private static Map view(Map map, int[] polyLines, int[] polygons) {
+        return new Map(new ViewList<Attributed<PolyLine>>(map.POLYLINES, polyLines), new ViewList<Attributed<Polygon>>(map.POLYGONS, polygons),
+                selected(map.polyLineLayers(), polyLines), selected(map.polygonLayers(), polygons));
+    }
+    
     /**
      * Méthode qui retourne une liste non modifiable des polylignes de la carte
      * 
@@ -60,6 +90,143 @@ public final class Map {
         return POLYGONS;
     }
     
+    /**
+     * Méthode qui retourne la couche de la polyligne d'indice
+     * donné, c-à-d la valeur entière de son attribut "layer",
+     * ou 0 si elle n'en a pas (ou s'il n'est pas entier)
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @param index
+     *      L'indice de la polyligne dans polyLines()
+     * 
+     * @return polyLineLayers[index]
+     *      La couche de la polyligne
+     */
+    public int polyLineLayer(int index) {
+        return polyLineLayers()[index];
+    }
+    
+    /**
+     * Méthode qui retourne la couche du polygone d'indice
+     * donné, c-à-d la valeur entière de son attribut "layer",
+     * ou 0 s'il n'en a pas (ou s'il n'est pas entier)
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @param index
+     *      L'indice du polygone dans polygons()
+     * 
+     * @return polygonLayers[index]
+     *      La couche du polygone
+     */
+    public int polygonLayer(int index) {
+        return polygonLayers()[index];
+    }
+    
+    private int[] polyLineLayers() {
+        int[] layers = polyLineLayers;
+        if (layers == null) {
+            layers = layers(POLYLINES);
+            polyLineLayers = layers;
+        }
+        return layers;
+    }
+    
+    private int[] polygonLayers() {
+        int[] layers = polygonLayers;
+        if (layers == null) {
+            layers = layers(POLYGONS);
+            polygonLayers = layers;
+        }
+        return layers;
+    }
+    
+    private static int[] layers(List<? extends Attributed<?>> elements) {
+        int[] layers = new int[elements.size()];
+        for (int i = 0 ; i < layers.length ; i++) {
+            layers[i] = elements.get(i).attributeValue("layer", 0);
+        }
+        return layers;
+    }
+    
+    /**
+     * Méthode qui retourne une vue de la carte ne contenant que
+     * les éléments dont la boîte englobante (celle de l'enveloppe
+     * pour les polygones) a au moins un point commun avec le
+     * rectangle donné, dans le même ordre que dans la carte. Pour
+     * dessiner une zone, le rectangle doit être agrandi de la
+     * largeur des traits les plus épais
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @param bl
+     *      Le coin bas-gauche du rectangle
+     * @param tr
+     *      Le coin haut-droit du rectangle
+     * 
+     * @return view(this, polyLines, polygons)
+     *      La vue de la carte limitée au rectangle
+     */
+    public Map within(Point bl, Point tr) {
+        synchronized (this) {
+            if (polyLineIndex == null) {
+                double[] boxes = new double[4 * POLYLINES.size()];
+                for (int i = 0 ; i < POLYLINES.size() ; i++) {
+                    boundingBox(POLYLINES.get(i).value(), boxes, i);
+                }
+                polyLineIndex = new PackedRTree(boxes);
+                boxes = new double[4 * POLYGONS.size()];
+                for (int i = 0 ; i < POLYGONS.size() ; i++) {
+                    boundingBox(POLYGONS.get(i).value().shell(), boxes, i);
+                }
+                polygonIndex = new PackedRTree(boxes);
+            }
+        }
+        int[] polyLines = polyLineIndex.search(bl.x(), bl.y(), tr.x(), tr.y());
+        int[] polygons = polygonIndex.search(bl.x(), bl.y(), tr.x(), tr.y());
+        return view(this, polyLines, polygons);
+    }
+    
+    private static int[] selected(int[] values, int[] indices) {
+        int[] selected = new int[indices.length];
+        for (int i = 0 ; i < indices.length ; i++) {
+            selected[i] = values[indices[i]];
+        }
+        return selected;
+    }
+    
+    private static void boundingBox(PolyLine polyLine, double[] boxes, int i) {
+        boxes[4 * i] = polyLine.minX();
+        boxes[4 * i + 1] = polyLine.minY();
+        boxes[4 * i + 2] = polyLine.maxX();
+        boxes[4 * i + 3] = polyLine.maxY();
+    }
+    
+    // Vue non modifiable des éléments de la liste ayant les indices donnés
+    private static final class ViewList<T> extends AbstractList<T> implements RandomAccess {
+        private final List<T> LIST;
+        private final int[] INDICES;
+        
+        ViewList(List<T> list, int[] indices) {
+            LIST = list;
+            INDICES = indices;
+        }
+        
+        @Override
+        public T get(int index) {
+            return LIST.get(INDICES[index]);
+        }
+        
+        @Override
+        public int size() {
+            return INDICES.length;
+        }
+    }
+    
     /**
      * Bâtisseur de la classe Map. Permet de construire
      * progressivement une carte
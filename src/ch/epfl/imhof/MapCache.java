@@ -0,0 +1,311 @@
+package ch.epfl.imhof;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.projection.Projection;
+
+/**
+ * Classe qui permet de sauvegarder une carte projetée dans
+ * un fichier binaire compact, et de la relire rapidement
+ * lors des exécutions suivantes (le fichier est projeté en
+ * mémoire). Le fichier contient, dans cet ordre :
+ *
+ *   - un en-tête (un nombre magique et la version du format)
+ *   - le dictionnaire des chaînes (clefs et valeurs des attributs)
+ *   - les ensembles d'attributs distincts, sous forme de paires
+ *     d'indices dans le dictionnaire
+ *   - les polylignes : pour chacune, l'indice de ses attributs,
+ *     sa fermeture, son nombre de points et ses coordonnées
+ *   - les polygones : pour chacun, l'indice de ses attributs,
+ *     son nombre d'anneaux (l'enveloppe puis les trous) et, pour
+ *     chaque anneau, son nombre de points et ses coordonnées
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+public final class MapCache {
+    private static final int MAGIC = 0x494D4846;
+    private static final int VERSION = 1;
+
+    private MapCache() {}
+
+    /**
+     * Méthode qui calcule la clef de cache d'une carte, qui
+     * dépend du contenu du fichier OSM, de la projection
+     * utilisée et d'une éventuelle variante de lecture
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param fileName
+     *      le nom du fichier OSM (une ressource)
+     * @param projection
+     *      la projection utilisée
+     * @param variant
+     *      la variante de lecture du fichier (par exemple
+     *      le filtre utilisé)
+     *
+     * @throws IOException
+     *      si le fichier ne peut pas être lu
+     *
+     * @return key
+     *      la clef, sous forme hexadécimale
+     */
+    public static String key(String fileName, Projection projection, String variant) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        InputStream stream = MapCache.class.getClassLoader().getResourceAsStream(fileName);
+        if (stream == null) {
+            throw new IOException("Cannot find file " + fileName);
+        }
+        try (InputStream in = stream) {
+            byte[] buffer = new byte[64 * 1024];
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, length);
+            }
+        }
+        digest.update((byte)0);
+        digest.update(projection.getClass().getName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+        digest.update(variant.getBytes(StandardCharsets.UTF_8));
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b & 0xFF));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Méthode qui écrit la carte donnée dans le fichier donné.
+     * Le fichier est d'abord écrit sous un nom temporaire, propre
+     * à chaque écriture, puis renommé, de sorte qu'un fichier de
+     * cache n'est jamais incomplet, même si plusieurs exécutions
+     * l'écrivent en même temps
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param map
+     *      la carte à écrire
+     * @param file
+     *      le fichier de cache
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée
+     */
+    public static void write(Map map, Path file) throws IOException {
+        List<String> strings = new ArrayList<>();
+        HashMap<String, Integer> stringIndices = new HashMap<>();
+        List<int[]> attributes = new ArrayList<>();
+        HashMap<List<Integer>, Integer> attributesIndices = new HashMap<>();
+        int[] polyLineAttributes = new int[map.polyLines().size()];
+        int[] polygonAttributes = new int[map.polygons().size()];
+        for (int i = 0 ; i < polyLineAttributes.length ; i++) {
+            polyLineAttributes[i] = index(map.polyLines().get(i).attributes(), strings, stringIndices, attributes, attributesIndices);
+        }
+        for (int i = 0 ; i < polygonAttributes.length ; i++) {
+            polygonAttributes[i] = index(map.polygons().get(i).attributes(), strings, stringIndices, attributes, attributesIndices);
+        }
+
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName() + ".", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(strings.size());
+                for (String string : strings) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+                out.writeInt(attributes.size());
+                for (int[] pairs : attributes) {
+                    out.writeInt(pairs.length / 2);
+                    for (int index : pairs) {
+                        out.writeInt(index);
+                    }
+                }
+                out.writeInt(polyLineAttributes.length);
+                for (int i = 0 ; i < polyLineAttributes.length ; i++) {
+                    PolyLine polyLine = map.polyLines().get(i).value();
+                    out.writeInt(polyLineAttributes[i]);
+                    out.writeBoolean(polyLine.isClosed());
+                    writePoints(out, polyLine);
+                }
+                out.writeInt(polygonAttributes.length);
+                for (int i = 0 ; i < polygonAttributes.length ; i++) {
+                    Polygon polygon = map.polygons().get(i).value();
+                    out.writeInt(polygonAttributes[i]);
+                    out.writeInt(1 + polygon.holes().size());
+                    writePoints(out, polygon.shell());
+                    for (ClosedPolyLine hole : polygon.holes()) {
+                        writePoints(out, hole);
+                    }
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException f) {
+                e.addSuppressed(f);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Méthode qui lit une carte dans le fichier de cache donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param file
+     *      le fichier de cache
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée, ou si
+     *      le fichier n'est pas un fichier de cache valide
+     *
+     * @return map.build()
+     *      la carte lue
+     */
+    public static Map read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+                throw new IOException("Invalid map cache file: " + file);
+            }
+            String[] strings = new String[count(buffer, 4, file)];
+            byte[] bytes = new byte[64];
+            for (int i = 0 ; i < strings.length ; i++) {
+                int length = count(buffer, 1, file);
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, 2 * bytes.length)];
+                }
+                buffer.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            Attributes[] attributes = new Attributes[count(buffer, 4, file)];
+            for (int i = 0 ; i < attributes.length ; i++) {
+                Attributes.Builder builder = new Attributes.Builder();
+                for (int j = count(buffer, 8, file) ; j > 0 ; j--) {
+                    builder.put(strings[buffer.getInt()], strings[buffer.getInt()]);
+                }
+                attributes[i] = builder.build();
+            }
+
+            Map.Builder map = new Map.Builder();
+            for (int i = count(buffer, 9, file) ; i > 0 ; i--) {
+                Attributes polyLineAttributes = attributes[buffer.getInt()];
+                boolean isClosed = (buffer.get() != 0);
+                double[] coordinates = readPoints(buffer, file);
+                map.addPolyLine(new Attributed<>(isClosed ? new ClosedPolyLine(coordinates) : new OpenPolyLine(coordinates), polyLineAttributes));
+            }
+            for (int i = count(buffer, 12, file) ; i > 0 ; i--) {
+                Attributes polygonAttributes = attributes[buffer.getInt()];
+                int rings = count(buffer, 4, file);
+                if (rings == 0) {
+                    throw new IOException("Invalid map cache file: " + file);
+                }
+                ClosedPolyLine shell = new ClosedPolyLine(readPoints(buffer, file));
+                List<ClosedPolyLine> holes = new ArrayList<>(rings - 1);
+                for (int j = 1 ; j < rings ; j++) {
+                    holes.add(new ClosedPolyLine(readPoints(buffer, file)));
+                }
+                map.addPolygon(new Attributed<>(new Polygon(shell, holes), polygonAttributes));
+            }
+            return map.build();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Invalid map cache file: " + file, e);
+        }
+    }
+
+    private static int index(Attributes attributes, List<String> strings, HashMap<String, Integer> stringIndices, List<int[]> allAttributes, HashMap<List<Integer>, Integer> attributesIndices) {
+        String[] keys = attributes.keys().toArray(new String[0]);
+        Arrays.sort(keys);
+        List<Integer> pairs = new ArrayList<>(2 * keys.length);
+        for (String key : keys) {
+            pairs.add(index(key, strings, stringIndices));
+            pairs.add(index(attributes.get(key), strings, stringIndices));
+        }
+        Integer index = attributesIndices.get(pairs);
+        if (index == null) {
+            index = allAttributes.size();
+            int[] array = new int[pairs.size()];
+            for (int i = 0 ; i < array.length ; i++) {
+                array[i] = pairs.get(i);
+            }
+            allAttributes.add(array);
+            attributesIndices.put(pairs, index);
+        }
+        return index;
+    }
+
+    private static int index(String string, List<String> strings, HashMap<String, Integer> stringIndices) {
+        Integer index = stringIndices.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndices.put(string, index);
+        }
+        return index;
+    }
+
+    private static void writePoints(DataOutputStream out, PolyLine polyLine) throws IOException {
+        out.writeInt(polyLine.pointsCount());
+        for (int i = 0 ; i < polyLine.pointsCount() ; i++) {
+            out.writeDouble(polyLine.x(i));
+            out.writeDouble(polyLine.y(i));
+        }
+    }
+
+    // Lit un nombre d'éléments, qui doit être positif et ne pas
+    // dépasser ce qu'il reste à lire, chaque élément occupant au
+    // moins le nombre d'octets donné
+    private static int count(ByteBuffer buffer, int elementSize, Path file) throws IOException {
+        int count = buffer.getInt();
+        if ((count < 0) || ((long)count * elementSize > buffer.remaining())) {
+            throw new IOException("Invalid map cache file: " + file);
+        }
+        return count;
+    }
+
+    private static double[] readPoints(ByteBuffer buffer, Path file) throws IOException {
+        int count = count(buffer, 16, file);
+        // Les coordonnées sont lues d'un seul bloc
+        double[] coordinates = new double[2 * count];
+        buffer.asDoubleBuffer().get(coordinates);
+        buffer.position(buffer.position() + 8 * coordinates.length);
+        return coordinates;
+    }
+}
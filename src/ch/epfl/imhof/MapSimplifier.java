@@ -0,0 +1,261 @@
+package ch.epfl.imhof;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * Classe qui simplifie les polylignes et les polygones d'une
+ * carte projetée avant son dessin, avec l'algorithme de
+ * Douglas-Peucker : les points qui s'écartent de moins d'une
+ * certaine tolérance (typiquement une fraction de la taille
+ * d'un pixel du dessin) de la polyligne simplifiée sont
+ * supprimés. Les anneaux des polygones restent valides : ils
+ * gardent au moins trois points et leur orientation, sans quoi
+ * ils sont conservés tels quels
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+public final class MapSimplifier {
+    private final double SQUARED_TOLERANCE;
+
+    /**
+     * Construit un simplificateur de cartes
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param tolerance
+     *      l'écart maximal, dans les unités de la carte, entre
+     *      un point supprimé et la polyligne simplifiée
+     *
+     * @throws IllegalArgumentException
+     *      si la tolérance est négative ou n'est pas finie
+     */
+    public MapSimplifier(double tolerance) {
+        if (!(tolerance >= 0) || Double.isInfinite(tolerance)) {
+            throw new IllegalArgumentException("The tolerance must be a finite, non-negative number");
+        }
+        SQUARED_TOLERANCE = tolerance * tolerance;
+    }
+
+    /**
+     * Méthode statique qui construit un simplificateur dont la
+     * tolérance est la moitié de la taille d'un pixel d'un dessin
+     * de la zone donnée, de la largeur donnée : les points
+     * supprimés sont alors invisibles
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param left
+     *      l'abscisse du bord gauche de la zone dessinée
+     * @param right
+     *      l'abscisse du bord droit de la zone dessinée
+     * @param width
+     *      la largeur du dessin, en pixels
+     *
+     * @return new MapSimplifier((right - left) / (2 * width))
+     *      le simplificateur
+     */
+    public static MapSimplifier forDrawing(double left, double right, int width) {
+        return new MapSimplifier((right - left) / (2.0 * width));
+    }
+
+    /**
+     * Méthode qui simplifie toutes les polylignes et tous les
+     * polygones d'une carte, en gardant leurs attributs et
+     * leur ordre
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param map
+     *      la carte à simplifier
+     *
+     * @return new Map(polyLines, polygons)
+     *      la carte simplifiée
+     */
+    public Map simplify(Map map) {
+        List<Attributed<PolyLine>> polyLines = new ArrayList<Attributed<PolyLine>>(map.polyLines().size());
+        for (Attributed<PolyLine> polyLine : map.polyLines()) {
+            PolyLine simplified = simplify(polyLine.value());
+            polyLines.add((simplified == polyLine.value()) ? polyLine : new Attributed<PolyLine>(simplified, polyLine.attributes()));
+        }
+        List<Attributed<Polygon>> polygons = new ArrayList<Attributed<Polygon>>(map.polygons().size());
+        for (Attributed<Polygon> polygon : map.polygons()) {
+            Polygon simplified = simplify(polygon.value());
+            polygons.add((simplified == polygon.value()) ? polygon : new Attributed<Polygon>(simplified, polygon.attributes()));
+        }
+        return new Map(polyLines, polygons);
+    }
+
+    /**
+     * Méthode qui simplifie un polygone, c'est-à-dire son
+     * enveloppe et chacun de ses trous
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param polygon
+     *      le polygone à simplifier
+     *
+     * @return polygon
+     *      le polygone lui-même s'il ne peut pas être simplifié,
+     *      ou le polygone simplifié
+     */
+    public Polygon simplify(Polygon polygon) {
+        ClosedPolyLine shell = simplify(polygon.shell());
+        boolean changed = (shell != polygon.shell());
+        List<ClosedPolyLine> holes = new ArrayList<ClosedPolyLine>(polygon.holes().size());
+        for (ClosedPolyLine hole : polygon.holes()) {
+            ClosedPolyLine simplified = simplify(hole);
+            changed |= (simplified != hole);
+            holes.add(simplified);
+        }
+        return changed ? new Polygon(shell, holes) : polygon;
+    }
+
+    /**
+     * Méthode qui simplifie une polyligne. Une polyligne ouverte
+     * garde ses extrémités ; une polyligne fermée est découpée
+     * en deux chaînes entre son premier point et le point le plus
+     * éloigné de celui-ci, qui sont simplifiées séparément
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param polyLine
+     *      la polyligne à simplifier
+     *
+     * @return polyLine
+     *      la polyligne elle-même si elle ne peut pas être
+     *      simplifiée, ou la polyligne simplifiée
+     */
+    public PolyLine simplify(PolyLine polyLine) {
+        return polyLine.isClosed() ? simplify((ClosedPolyLine)polyLine) : simplifyOpen(polyLine);
+    }
+
+    /**
+     * Méthode qui simplifie une polyligne fermée, en garantissant
+     * que le résultat a au moins trois points et la même
+     * orientation que l'original
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param ring
+     *      la polyligne fermée à simplifier
+     *
+     * @return ring
+     *      la polyligne fermée elle-même si elle ne peut pas
+     *      être simplifiée, ou la polyligne fermée simplifiée
+     */
+    public ClosedPolyLine simplify(ClosedPolyLine ring) {
+        int n = ring.pointsCount();
+        if (n <= 3) {
+            return ring;
+        }
+        int farthest = 0;
+        double farthestDistance = -1;
+        for (int i = 1 ; i < n ; i++) {
+            double dx = ring.x(i) - ring.x(0), dy = ring.y(i) - ring.y(0);
+            double distance = dx * dx + dy * dy;
+            if (distance > farthestDistance) {
+                farthest = i;
+                farthestDistance = distance;
+            }
+        }
+        // Le premier point est répété à la fin pour que la seconde chaîne le rejoigne
+        boolean[] kept = new boolean[n + 1];
+        markKept(ring, 0, farthest, kept);
+        markKept(ring, farthest, n, kept);
+        double[] coordinates = keptCoordinates(ring, kept, n);
+        if ((coordinates.length == 2 * n) || (coordinates.length < 6)) {
+            return ring;
+        }
+        ClosedPolyLine simplified = new ClosedPolyLine(coordinates);
+        if (Math.signum(simplified.signedArea()) != Math.signum(ring.signedArea())) {
+            return ring;
+        }
+        return simplified;
+    }
+
+    private PolyLine simplifyOpen(PolyLine polyLine) {
+        int n = polyLine.pointsCount();
+        if (n <= 2) {
+            return polyLine;
+        }
+        boolean[] kept = new boolean[n];
+        markKept(polyLine, 0, n - 1, kept);
+        double[] coordinates = keptCoordinates(polyLine, kept, n);
+        return (coordinates.length == 2 * n) ? polyLine : new OpenPolyLine(coordinates);
+    }
+
+    // Marque les points à garder entre les indices first et last
+    // (compris, un indice égal au nombre de points désignant le premier) ;
+    // la récursion est remplacée par une pile d'intervalles
+    private void markKept(PolyLine polyLine, int first, int last, boolean[] kept) {
+        int n = polyLine.pointsCount();
+        kept[first] = true;
+        kept[last] = true;
+        int[] stack = new int[2 * (last - first + 1)];
+        int top = 0;
+        stack[top++] = first;
+        stack[top++] = last;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            double x1 = polyLine.x(start), y1 = polyLine.y(start);
+            double x2 = polyLine.x(end % n), y2 = polyLine.y(end % n);
+            int farthest = -1;
+            double farthestDistance = SQUARED_TOLERANCE;
+            for (int i = start + 1 ; i < end ; i++) {
+                double distance = squaredDistanceToSegment(polyLine.x(i), polyLine.y(i), x1, y1, x2, y2);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest != -1) {
+                kept[farthest] = true;
+                stack[top++] = start;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = end;
+            }
+        }
+    }
+
+    private static double[] keptCoordinates(PolyLine polyLine, boolean[] kept, int n) {
+        int count = 0;
+        for (int i = 0 ; i < n ; i++) {
+            if (kept[i]) {
+                count++;
+            }
+        }
+        double[] coordinates = new double[2 * count];
+        int j = 0;
+        for (int i = 0 ; i < n ; i++) {
+            if (kept[i]) {
+                coordinates[j++] = polyLine.x(i);
+                coordinates[j++] = polyLine.y(i);
+            }
+        }
+        return coordinates;
+    }
+
+    private static double squaredDistanceToSegment(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1, dy = y2 - y1;
+        double squaredLength = dx * dx + dy * dy;
+        double t = (squaredLength == 0) ? 0 : ((x - x1) * dx + (y - y1) * dy) / squaredLength;
+        t = Math.max(0, Math.min(1, t));
+        double ex = x - (x1 + t * dx), ey = y - (y1 + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,229 @@
+package ch.epfl.imhof;
+
+import java.util.Arrays;
+
+/**
+ * Classe représentant un R-arbre statique, rempli une fois pour
+ * toutes selon la méthode STR (Sort-Tile-Recursive) : à chaque
+ * niveau, les rectangles sont triés selon l'abscisse de leur
+ * centre, découpés en tranches verticales, triés dans chaque
+ * tranche selon l'ordonnée de leur centre, puis regroupés par
+ * paquets consécutifs qui forment les nœuds du niveau supérieur.
+ * Les éléments indexés sont désignés par leur indice
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class PackedRTree {
+    private static final int NODE_CAPACITY = 16;
+    private static final int[] NO_INDICES = new int[0];
+
+    // Pour chaque niveau (les feuilles d'abord) : les boîtes des nœuds
+    // (quatre valeurs par nœud), et l'intervalle de leurs enfants dans
+    // le niveau inférieur, ou dans ITEMS pour les feuilles
+    private final double[][] BOXES;
+    private final int[][] CHILDREN;
+    private final int[] ITEMS;
+    private final double[] ITEM_BOXES;
+
+    /**
+     * Construit un R-arbre indexant les rectangles donnés
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param boxes
+     *      les rectangles des éléments, sous forme de quadruplets
+     *      (abscisse et ordonnée minimales, puis maximales) mis
+     *      bout à bout ; le tableau n'est pas copié
+     */
+    PackedRTree(double[] boxes) {
+        ITEM_BOXES = boxes;
+        int count = boxes.length / 4;
+        int levels = 1;
+        for (int n = count ; n > NODE_CAPACITY ; n = (n + NODE_CAPACITY - 1) / NODE_CAPACITY) {
+            levels++;
+        }
+        BOXES = new double[levels][];
+        CHILDREN = new int[levels][];
+        ITEMS = strOrder(boxes, count);
+        double[] childBoxes = boxes;
+        int[] childOrder = ITEMS;
+        for (int level = 0 ; level < levels ; level++) {
+            int nodes = (childOrder.length + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            double[] nodeBoxes = new double[4 * nodes];
+            int[] children = new int[nodes + 1];
+            for (int node = 0 ; node < nodes ; node++) {
+                int first = node * NODE_CAPACITY;
+                int last = Math.min(first + NODE_CAPACITY, childOrder.length);
+                children[node] = first;
+                double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+                for (int i = first ; i < last ; i++) {
+                    int child = (level == 0) ? childOrder[i] : i;
+                    minX = Math.min(minX, childBoxes[4 * child]);
+                    minY = Math.min(minY, childBoxes[4 * child + 1]);
+                    maxX = Math.max(maxX, childBoxes[4 * child + 2]);
+                    maxY = Math.max(maxY, childBoxes[4 * child + 3]);
+                }
+                nodeBoxes[4 * node] = minX;
+                nodeBoxes[4 * node + 1] = minY;
+                nodeBoxes[4 * node + 2] = maxX;
+                nodeBoxes[4 * node + 3] = maxY;
+            }
+            children[nodes] = childOrder.length;
+            if (level + 1 < levels) {
+                // Les nœuds sont réordonnés (avec leurs intervalles d'enfants)
+                // pour que ceux d'un même parent soient consécutifs
+                int[] order = strOrder(nodeBoxes, nodes);
+                double[] sortedBoxes = new double[nodeBoxes.length];
+                int[] starts = new int[nodes];
+                int[] ends = new int[nodes];
+                for (int i = 0 ; i < nodes ; i++) {
+                    System.arraycopy(nodeBoxes, 4 * order[i], sortedBoxes, 4 * i, 4);
+                    starts[i] = children[order[i]];
+                    ends[i] = children[order[i] + 1];
+                }
+                BOXES[level] = sortedBoxes;
+                CHILDREN[level] = interleave(starts, ends);
+                childBoxes = sortedBoxes;
+                childOrder = new int[nodes];
+            } else {
+                BOXES[level] = nodeBoxes;
+                CHILDREN[level] = interleave(Arrays.copyOf(children, nodes), Arrays.copyOfRange(children, 1, nodes + 1));
+            }
+        }
+    }
+
+    /**
+     * Méthode qui retourne, dans l'ordre croissant, les indices
+     * des éléments dont le rectangle a au moins un point commun
+     * (bords compris) avec le rectangle donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param minX
+     *      l'abscisse minimale du rectangle
+     * @param minY
+     *      l'ordonnée minimale du rectangle
+     * @param maxX
+     *      l'abscisse maximale du rectangle
+     * @param maxY
+     *      l'ordonnée maximale du rectangle
+     *
+     * @return result
+     *      les indices des éléments, triés
+     */
+    int[] search(double minX, double minY, double maxX, double maxY) {
+        if (ITEMS.length == 0) {
+            return NO_INDICES;
+        }
+        int[] result = new int[16];
+        int resultLength = 0;
+        // La pile contient des paires (niveau, nœud)
+        int[] stack = new int[2 * NODE_CAPACITY * BOXES.length];
+        int top = 0;
+        int root = BOXES.length - 1;
+        for (int node = 0 ; node < BOXES[root].length / 4 ; node++) {
+            stack = push(stack, top, root, node);
+            top += 2;
+        }
+        while (top > 0) {
+            int node = stack[--top];
+            int level = stack[--top];
+            if (!intersects(BOXES[level], node, minX, minY, maxX, maxY)) {
+                continue;
+            }
+            int first = CHILDREN[level][2 * node], last = CHILDREN[level][2 * node + 1];
+            if (level == 0) {
+                for (int i = first ; i < last ; i++) {
+                    if (intersects(ITEM_BOXES, ITEMS[i], minX, minY, maxX, maxY)) {
+                        if (resultLength == result.length) {
+                            result = Arrays.copyOf(result, 2 * resultLength);
+                        }
+                        result[resultLength++] = ITEMS[i];
+                    }
+                }
+            } else {
+                for (int child = first ; child < last ; child++) {
+                    stack = push(stack, top, level - 1, child);
+                    top += 2;
+                }
+            }
+        }
+        result = Arrays.copyOf(result, resultLength);
+        // Les éléments sont rendus dans leur ordre d'origine
+        Arrays.sort(result);
+        return result;
+    }
+
+    private static int[] push(int[] stack, int top, int level, int node) {
+        if (top + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, 2 * stack.length);
+        }
+        stack[top] = level;
+        stack[top + 1] = node;
+        return stack;
+    }
+
+    private static boolean intersects(double[] boxes, int i, double minX, double minY, double maxX, double maxY) {
+        return (boxes[4 * i] <= maxX) && (boxes[4 * i + 2] >= minX) && (boxes[4 * i + 1] <= maxY) && (boxes[4 * i + 3] >= minY);
+    }
+
+    private static int[] interleave(int[] starts, int[] ends) {
+        int[] interleaved = new int[2 * starts.length];
+        for (int i = 0 ; i < starts.length ; i++) {
+            interleaved[2 * i] = starts[i];
+            interleaved[2 * i + 1] = ends[i];
+        }
+        return interleaved;
+    }
+
+    // Retourne l'ordre STR des count rectangles donnés : par tranches
+    // verticales selon l'abscisse du centre, puis selon l'ordonnée du
+    // centre dans chaque tranche
+    private static int[] strOrder(double[] boxes, int count) {
+        int[] order = sortedByCenter(boxes, count, null, 0, count, 0);
+        int leaves = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int slices = (int)Math.ceil(Math.sqrt(leaves));
+        int sliceSize = slices * NODE_CAPACITY;
+        int[] result = new int[count];
+        for (int first = 0 ; first < count ; first += sliceSize) {
+            int last = Math.min(first + sliceSize, count);
+            int[] slice = sortedByCenter(boxes, count, order, first, last, 1);
+            System.arraycopy(slice, 0, result, first, slice.length);
+        }
+        return result;
+    }
+
+    // Trie les indices order[first..last[ (ou first..last si order est
+    // nul) selon la coordonnée donnée (0 pour x, 1 pour y) du centre des
+    // rectangles ; les centres sont ramenés à des entiers sur 31 bits,
+    // ce qui permet de trier des entiers longs contenant aussi l'indice
+    private static int[] sortedByCenter(double[] boxes, int count, int[] order, int first, int last, int coordinate) {
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int i = first ; i < last ; i++) {
+            double center = center(boxes, (order == null) ? i : order[i], coordinate);
+            min = Math.min(min, center);
+            max = Math.max(max, center);
+        }
+        double scale = (max > min) ? Integer.MAX_VALUE / (max - min) : 0;
+        long[] keys = new long[last - first];
+        for (int i = first ; i < last ; i++) {
+            int item = (order == null) ? i : order[i];
+            long key = (long)((center(boxes, item, coordinate) - min) * scale);
+            keys[i - first] = (key << 32) | item;
+        }
+        Arrays.sort(keys);
+        int[] sorted = new int[keys.length];
+        for (int i = 0 ; i < keys.length ; i++) {
+            sorted[i] = (int)keys[i];
+        }
+        return sorted;
+    }
+
+    private static double center(double[] boxes, int i, int coordinate) {
+        return (boxes[4 * i + coordinate] + boxes[4 * i + 2 + coordinate]) / 2;
+    }
+}
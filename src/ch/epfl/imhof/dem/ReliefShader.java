@@ -5,6 +5,7 @@ import java.awt.image.ConvolveOp;
 import java.awt.image.Kernel;
 import java.util.function.Function;
 
+import ch.epfl.imhof.PointGeo;
 import ch.epfl.imhof.Vector3;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.projection.Projection;
@@ -104,9 +105,22 @@ public final class ReliefShader {
      */
     private BufferedImage unblurred(int width, int height, Function<Point, Point> coordinateChange) {
         BufferedImage image = new BufferedImage(width, height, TYPE_INT_RGB);
+        // Le changement de repère est aligné sur les axes : l'abscisse d'un
+        // pixel ne dépend que de sa colonne, et son ordonnée que de sa ligne
+        double[] xs = new double[width];
         for (int i = 0 ; i < width ; i++) {
-            for (int j = 0 ; j < height ; j++) {
-                Vector3 vector = MODEL.normalAt(PROJECTION.inverse(coordinateChange.apply(new Point(i, j))));
+            xs[i] = coordinateChange.apply(new Point(i, 0)).x();
+        }
+        double[] coordinates = new double[2 * width];
+        for (int j = 0 ; j < height ; j++) {
+            double y = coordinateChange.apply(new Point(0, j)).y();
+            for (int i = 0 ; i < width ; i++) {
+                coordinates[2 * i] = xs[i];
+                coordinates[2 * i + 1] = y;
+            }
+            PROJECTION.inverse(coordinates, coordinates, 0, width);
+            for (int i = 0 ; i < width ; i++) {
+                Vector3 vector = MODEL.normalAt(new PointGeo(coordinates[2 * i], coordinates[2 * i + 1]));
                 double cos = VECTOR.scalarProduct(vector) / (VECTOR.norm() * vector.norm());
                 int rg = (int)((cos + 1) * 255.9999 / 2);
                 int b = (int)((0.7 * cos + 1) * 255.9999 / 2);
@@ -12,10 +12,12 @@ import static java.lang.Math.*;
  * @author Andrey Batasov (250149)
  */
 public final class ClosedPolyLine extends PolyLine {
+    private final double SIGNED_AREA;
     
     /**
      * Construit une polyligne fermée à partir d'une
-     * liste de points
+     * liste de points (son aire est calculée une fois
+     * pour toutes)
      *
      * @author Raja Soufi (247680)
      * @author Andrey Batasov (250149)
@@ -26,6 +28,40 @@ public final class ClosedPolyLine extends PolyLine {
      */
     public ClosedPolyLine(List<Point> points) {
         super(points);
+        SIGNED_AREA = signedAreaOf();
+    }
+    
+    /**
+     * Construit une polyligne fermée à partir des
+     * coordonnées de ses points, sous forme de paires
+     * (x, y) mises bout à bout
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param coordinates
+     *      les coordonnées des points de la polyligne
+     */
+    public ClosedPolyLine(double[] coordinates) {
+        super(coordinates);
+        SIGNED_AREA = signedAreaOf();
+    }
+    
+    /**
+     * Construit une polyligne fermée à partir des length
+     * premières valeurs d'un tableau de coordonnées
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param coordinates
+     *      les coordonnées des points de la polyligne
+     * @param length
+     *      le nombre de valeurs à utiliser
+     */
+    public ClosedPolyLine(double[] coordinates, int length) {
+        super(coordinates, length);
+        SIGNED_AREA = signedAreaOf();
     }
     
     /**
@@ -42,21 +78,32 @@ public final class ClosedPolyLine extends PolyLine {
     }
     
     /**
-     * Méthode qui calcule l'aire de la polyligne fermée
+     * Méthode qui retourne l'aire de la polyligne fermée
      *
      * @author Raja Soufi (247680)
      * @author Andrey Batasov (250149)
      * 
-     * @return somme
-     *      retourne l'aire calculée
+     * @return abs(SIGNED_AREA)
+     *      retourne l'aire
      */
     public double area() {
-        double somme = 0;
-        for (int i = 0 ; i < points().size() ; i++) {
-            somme += vertex(i).x() * (vertex(i + 1).y() - vertex(i - 1).y());
-        }
-        somme = (abs(somme) / 2);
-        return somme;
+        return abs(SIGNED_AREA);
+    }
+    
+    /**
+     * Méthode qui retourne l'aire signée de la polyligne
+     * fermée, positive si ses points sont donnés dans le
+     * sens inverse des aiguilles d'une montre et négative
+     * sinon
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @return SIGNED_AREA
+     *      retourne l'aire signée
+     */
+    public double signedArea() {
+        return SIGNED_AREA;
     }
     
     /**
@@ -73,14 +120,21 @@ public final class ClosedPolyLine extends PolyLine {
      *      retourne le résultat du test
      */
     public boolean containsPoint(Point p) {
+        // Un point hors de la boîte englobante n'est entouré par aucun côté
+        if (!boundingBoxContains(p)) {
+            return false;
+        }
         int windingNumber = 0;
-        for (int i = 0 ; i < points().size() ; i++) {
-            if (vertex(i).y() <= p.y()) {
-                if ((vertex(i + 1).y() > p.y()) && (isToTheLeft(p, vertex(i), vertex(i + 1)))) {
+        int n = pointsCount();
+        double px = p.x(), py = p.y();
+        for (int i = 0 ; i < n ; i++) {
+            int j = (i + 1 == n) ? 0 : i + 1;
+            if (y(i) <= py) {
+                if ((y(j) > py) && (isToTheLeft(px, py, x(i), y(i), x(j), y(j)))) {
                     windingNumber++;
                 }
             } else {
-                if ((vertex(i + 1).y() <= p.y()) && (isToTheLeft(p, vertex(i + 1), vertex(i)))) {
+                if ((y(j) <= py) && (isToTheLeft(px, py, x(j), y(j), x(i), y(i)))) {
                     windingNumber--;
                 }
             }
@@ -95,33 +149,32 @@ public final class ClosedPolyLine extends PolyLine {
      * @author Raja Soufi (247680)
      * @author Andrey Batasov (250149)
      * 
-     * @param p
-     *     un point qu'on veut tester avec la méthode
-     * @param end1
-     *     le premier point qui définit la droite
-     * @param end2
-     *     le deuxième point qui définit la droite
+     * @param x
+     *     l'abscisse du point qu'on veut tester
+     * @param y
+     *     l'ordonnée du point qu'on veut tester
+     * @param x1
+     *     l'abscisse du premier point qui définit la droite
+     * @param y1
+     *     l'ordonnée du premier point qui définit la droite
+     * @param x2
+     *     l'abscisse du deuxième point qui définit la droite
+     * @param y2
+     *     l'ordonnée du deuxième point qui définit la droite
      * 
-     * @return ((end1.x() - p.x()) * (end2.y() - p.y()) > (end2.x() - p.x()) * (end1.y() - p.y()))
+     * @return ((x1 - x) * (y2 - y) > (x2 - x) * (y1 - y))
      *      retourne le résultat du test
      */
-    private boolean isToTheLeft(Point p, Point end1, Point end2) {
-        return ((end1.x() - p.x()) * (end2.y() - p.y()) > (end2.x() - p.x()) * (end1.y() - p.y()));
+    private static boolean isToTheLeft(double x, double y, double x1, double y1, double x2, double y2) {
+        return ((x1 - x) * (y2 - y) > (x2 - x) * (y1 - y));
     }
     
-    /**
-     * Getter d'un certain point de la polyligne fermée
-     *
-     * @author Raja Soufi (247680)
-     * @author Andrey Batasov (250149)
-     * 
-     * @param i
-     *      la position du point qui nous intéresse
-     * 
-     * @return points().get(floorMod(i, points().size()))
-     *      retourne le point qui nous intéresse
-     */
-    private Point vertex(int i) {
-        return points().get(floorMod(i, points().size()));
+    private double signedAreaOf() {
+        double somme = 0;
+        int n = pointsCount();
+        for (int i = 0 ; i < n ; i++) {
+            somme += x(i) * (y((i + 1 == n) ? 0 : i + 1) - y((i == 0) ? n - 1 : i - 1));
+        }
+        return somme / 2;
     }
 }
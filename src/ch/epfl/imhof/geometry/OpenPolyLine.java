@@ -26,6 +26,37 @@ public final class OpenPolyLine extends PolyLine {
         super(points);
     }
     
+    /**
+     * Construit une polyligne ouverte à partir des
+     * coordonnées de ses points, sous forme de paires
+     * (x, y) mises bout à bout
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param coordinates
+     *      les coordonnées des points de la polyligne
+     */
+    public OpenPolyLine(double[] coordinates) {
+        super(coordinates);
+    }
+    
+    /**
+     * Construit une polyligne ouverte à partir des length
+     * premières valeurs d'un tableau de coordonnées
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param coordinates
+     *      les coordonnées des points de la polyligne
+     * @param length
+     *      le nombre de valeurs à utiliser
+     */
+    public OpenPolyLine(double[] coordinates, int length) {
+        super(coordinates, length);
+    }
+    
     /**
      * Méthode qui détermine si la polyligne est fermée
      *
@@ -1,18 +1,22 @@
 package ch.epfl.imhof.geometry;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Collections;
 
 /**
  * Classe abstraite représentant une polyligne constituée
- * d'un ensemble de points
+ * d'un ensemble de points. Les coordonnées des points sont
+ * stockées dans un seul tableau, sous forme de paires (x, y),
+ * et la boîte englobante est calculée à la construction
  *
  * @author Raja Soufi (247680)
  * @author Andrey Batasov (250149)
  */
 public abstract class PolyLine {
-    private final List<Point> POINTS;
+    private final double[] COORDINATES;
+    // La boîte englobante : abscisse et ordonnée minimales, puis maximales
+    private final double[] BOUNDING_BOX;
     
     /**
      * Construit une polyligne à partir d'une
@@ -32,7 +36,60 @@ public abstract class PolyLine {
         if (points.size() == 0) {
             throw new IllegalArgumentException("La liste fournie est vide");
         } else {
-            POINTS = Collections.unmodifiableList(new ArrayList<Point>(points));
+            COORDINATES = new double[2 * points.size()];
+            int i = 0;
+            for (Point point : points) {
+                COORDINATES[i++] = point.x();
+                COORDINATES[i++] = point.y();
+            }
+            BOUNDING_BOX = boundingBox(COORDINATES);
+        }
+    }
+    
+    /**
+     * Construit une polyligne à partir d'un tableau
+     * contenant les coordonnées de ses points, sous forme
+     * de paires (x, y) mises bout à bout (le tableau est
+     * copié)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param coordinates
+     *      Les coordonnées des points de la polyligne
+     * 
+     * @throws IllegalArgumentException
+     *      Si le tableau est vide ou de longueur impaire
+     */
+    public PolyLine(double[] coordinates) {
+        this(coordinates, coordinates.length);
+    }
+    
+    /**
+     * Construit une polyligne à partir des length premières
+     * valeurs d'un tableau contenant les coordonnées de ses
+     * points, sous forme de paires (x, y) mises bout à bout
+     * (ces valeurs sont copiées)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param coordinates
+     *      Les coordonnées des points de la polyligne
+     * @param length
+     *      Le nombre de valeurs à utiliser (deux fois le
+     *      nombre de points)
+     * 
+     * @throws IllegalArgumentException
+     *      Si la longueur est nulle, impaire ou plus grande
+     *      que celle du tableau
+     */
+    public PolyLine(double[] coordinates, int length) {
+        if ((length <= 0) || (length % 2 != 0) || (length > coordinates.length)) {
+            throw new IllegalArgumentException("Le tableau fourni est vide ou de longueur invalide");
+        } else {
+            COORDINATES = Arrays.copyOf(coordinates, length);
+            BOUNDING_BOX = boundingBox(COORDINATES);
         }
     }
     
@@ -46,17 +103,187 @@ public abstract class PolyLine {
     public abstract boolean isClosed();
     
     /**
-     * Getter de la liste des points de la polyligne
+     * Getter du nombre de points de la polyligne
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return COORDINATES.length / 2
+     *       Le nombre de points
+     */
+    public int pointsCount() {
+        return COORDINATES.length / 2;
+    }
+    
+    /**
+     * Getter de l'abscisse du point d'indice donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param i
+     *      L'indice du point
+     *
+     * @return COORDINATES[2 * i]
+     *       L'abscisse du point
+     */
+    public double x(int i) {
+        return COORDINATES[2 * i];
+    }
+    
+    /**
+     * Getter de l'ordonnée du point d'indice donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param i
+     *      L'indice du point
+     *
+     * @return COORDINATES[2 * i + 1]
+     *       L'ordonnée du point
+     */
+    public double y(int i) {
+        return COORDINATES[2 * i + 1];
+    }
+    
+    /**
+     * Getter du point d'indice donné (construit
+     * à chaque appel)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param i
+     *      L'indice du point
+     *
+     * @return new Point(x(i), y(i))
+     *       Le point
+     */
+    public Point point(int i) {
+        return new Point(x(i), y(i));
+    }
+    
+    /**
+     * Getter de l'abscisse minimale des points de la
+     * polyligne
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @return BOUNDING_BOX[0]
+     *      retourne le bord gauche de la boîte englobante
+     */
+    public double minX() {
+        return BOUNDING_BOX[0];
+    }
+    
+    /**
+     * Getter de l'ordonnée minimale des points de la
+     * polyligne
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @return BOUNDING_BOX[1]
+     *      retourne le bord inférieur de la boîte englobante
+     */
+    public double minY() {
+        return BOUNDING_BOX[1];
+    }
+    
+    /**
+     * Getter de l'abscisse maximale des points de la
+     * polyligne
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @return BOUNDING_BOX[2]
+     *      retourne le bord droit de la boîte englobante
+     */
+    public double maxX() {
+        return BOUNDING_BOX[2];
+    }
+    
+    /**
+     * Getter de l'ordonnée maximale des points de la
+     * polyligne
      *
      * @author Raja Soufi (247680)
      * @author Andrey Batasov (250149)
+     * 
+     * @return BOUNDING_BOX[3]
+     *      retourne le bord supérieur de la boîte englobante
+     */
+    public double maxY() {
+        return BOUNDING_BOX[3];
+    }
+    
+    /**
+     * Méthode qui détermine si un point est contenu dans
+     * la boîte englobante de la polyligne (bords compris)
      *
-     * @return POINTS
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @param p
+     *     un point qu'on veut tester avec la méthode
+     * 
+     * @return retourne le résultat du test
+     */
+    public boolean boundingBoxContains(Point p) {
+        return (p.x() >= BOUNDING_BOX[0]) && (p.x() <= BOUNDING_BOX[2]) && (p.y() >= BOUNDING_BOX[1]) && (p.y() <= BOUNDING_BOX[3]);
+    }
+    
+    /**
+     * Méthode qui détermine si la boîte englobante de la
+     * polyligne a au moins un point commun (bords compris)
+     * avec le rectangle donné par ses coins bas-gauche et
+     * haut-droit
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @param bottomLeft
+     *     le coin bas-gauche du rectangle
+     * @param topRight
+     *     le coin haut-droit du rectangle
+     * 
+     * @return retourne le résultat du test
+     */
+    public boolean boundingBoxIntersects(Point bottomLeft, Point topRight) {
+        return (BOUNDING_BOX[0] <= topRight.x()) && (BOUNDING_BOX[2] >= bottomLeft.x()) && (BOUNDING_BOX[1] <= topRight.y()) && (BOUNDING_BOX[3] >= bottomLeft.y());
+    }
+    
+    /**
+     * Getter de la liste des points de la polyligne,
+     * sous forme d'une vue non modifiable (les points
+     * sont construits à chaque accès ; les méthodes
+     * x(int) et y(int) évitent ces constructions)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return new AbstractList<Point>() {}
      *            retourne la liste des points
      *            de la polyligne
      */
     public List<Point> points() {
-        return POINTS;
+        return new AbstractList<Point>() {
+            @Override
+            public Point get(int index) {
+                if ((index < 0) || (index >= pointsCount())) {
+                    throw new IndexOutOfBoundsException();
+                }
+                return point(index);
+            }
+            
+            @Override
+            public int size() {
+                return pointsCount();
+            }
+        };
     }
     
     /**
@@ -65,11 +292,22 @@ public abstract class PolyLine {
      * @author Raja Soufi (247680)
      * @author Andrey Batasov (250149)
      *
-     * @return POINTS.get(0)
+     * @return point(0)
      *       Le premier point de la liste
      */
     public Point firstPoint() {
-        return POINTS.get(0);
+        return point(0);
+    }
+    
+    private static double[] boundingBox(double[] coordinates) {
+        double[] box = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        for (int i = 0 ; i < coordinates.length ; i += 2) {
+            box[0] = Math.min(box[0], coordinates[i]);
+            box[1] = Math.min(box[1], coordinates[i + 1]);
+            box[2] = Math.max(box[2], coordinates[i]);
+            box[3] = Math.max(box[3], coordinates[i + 1]);
+        }
+        return box;
     }
     
     /**
@@ -81,7 +319,8 @@ public abstract class PolyLine {
      * @author Andrey Batasov (250149)
      */
     public static final class Builder {
-        private final List<Point> POINTS;
+        private double[] coordinates;
+        private int length;
         
         /**
          * Construit progressivement la liste des points
@@ -91,7 +330,8 @@ public abstract class PolyLine {
          * @author Andrey Batasov (250149)
          */
         public Builder() {
-            POINTS = new ArrayList<Point>();
+            coordinates = new double[16];
+            length = 0;
         }
         
         /**
@@ -105,7 +345,27 @@ public abstract class PolyLine {
          *      Le point qu'on voudrait ajouter à la liste
          */
         public void addPoint(Point point) {
-            POINTS.add(point);
+            addPoint(point.x(), point.y());
+        }
+        
+        /**
+         * Méthode qui ajoute un nouveau point, donné par
+         * ses coordonnées, à la liste des points
+         *
+         * @author Raja Soufi (247680)
+         * @author Andrey Batasov (250149)
+         * 
+         * @param x
+         *      L'abscisse du point
+         * @param y
+         *      L'ordonnée du point
+         */
+        public void addPoint(double x, double y) {
+            if (length == coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, 2 * length);
+            }
+            coordinates[length++] = x;
+            coordinates[length++] = y;
         }
         
         /**
@@ -116,11 +376,11 @@ public abstract class PolyLine {
          * @author Raja Soufi (247680)
          * @author Andrey Batasov (250149)
          * 
-         * @return new OpenPolyLine(points)
+         * @return new OpenPolyLine(coordinates, length)
          *      La polyligne construite (ouverte)
          */
         public OpenPolyLine buildOpen() {
-            return new OpenPolyLine(POINTS);
+            return new OpenPolyLine(coordinates, length);
         }
         
         /**
@@ -131,11 +391,11 @@ public abstract class PolyLine {
          * @author Raja Soufi (247680)
          * @author Andrey Batasov (250149)
          * 
-         * @return new OpenPolyLine(points)
+         * @return new ClosedPolyLine(coordinates, length)
          *      La polyligne construite (fermée)
          */
         public ClosedPolyLine buildClosed() {
-            return new ClosedPolyLine(POINTS);
+            return new ClosedPolyLine(coordinates, length);
         }
     }
 }
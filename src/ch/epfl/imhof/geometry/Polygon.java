@@ -6,7 +6,8 @@ import java.util.List;
 
 /**
  * Classe représentant un polygone constitué d'une enveloppe
- * contenant un ensemble de polylignes fermées
+ * contenant un ensemble de polylignes fermées. L'aire et le
+ * nombre de sommets sont calculés à la construction
  *
  * @author Raja Soufi (247680)
  * @author Andrey Batasov (250149)
@@ -14,6 +15,8 @@ import java.util.List;
 public final class Polygon {
     private final ClosedPolyLine SHELL;
     private final List<ClosedPolyLine> HOLES;
+    private final double AREA;
+    private final int VERTICES_COUNT;
     
     /**
      * Construit un polygone à partir d'une enveloppe (polyligne fermée)
@@ -32,6 +35,14 @@ public final class Polygon {
     public Polygon(ClosedPolyLine shell, List<ClosedPolyLine> holes) {
         SHELL = shell;
         HOLES = Collections.unmodifiableList(new ArrayList<ClosedPolyLine>(holes));
+        double area = shell.area();
+        int verticesCount = shell.pointsCount();
+        for (ClosedPolyLine hole : HOLES) {
+            area -= hole.area();
+            verticesCount += hole.pointsCount();
+        }
+        AREA = area;
+        VERTICES_COUNT = verticesCount;
     }
     
     /**
@@ -73,4 +84,54 @@ public final class Polygon {
     public List<ClosedPolyLine> holes() {
         return HOLES;
     }
+    
+    /**
+     * Getter de l'aire du polygone, c'est-à-dire celle de
+     * l'enveloppe moins celles des polylignes fermées qu'elle
+     * contient
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @return AREA
+     *      retourne l'aire
+     */
+    public double area() {
+        return AREA;
+    }
+    
+    /**
+     * Getter du nombre total de sommets de l'enveloppe
+     * et des polylignes fermées qu'elle contient
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @return VERTICES_COUNT
+     *      retourne le nombre de sommets
+     */
+    public int verticesCount() {
+        return VERTICES_COUNT;
+    }
+    
+    /**
+     * Méthode qui détermine si la boîte englobante du
+     * polygone (celle de son enveloppe) a au moins un point
+     * commun avec le rectangle donné par ses coins bas-gauche
+     * et haut-droit
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @param bottomLeft
+     *     le coin bas-gauche du rectangle
+     * @param topRight
+     *     le coin haut-droit du rectangle
+     * 
+     * @return SHELL.boundingBoxIntersects(bottomLeft, topRight)
+     *      retourne le résultat du test
+     */
+    public boolean boundingBoxIntersects(Point bottomLeft, Point topRight) {
+        return SHELL.boundingBoxIntersects(bottomLeft, topRight);
+    }
 }
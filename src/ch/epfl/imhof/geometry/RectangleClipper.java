@@ -0,0 +1,332 @@
+package ch.epfl.imhof.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Classe qui découpe des polylignes et des polygones selon un
+ * rectangle aligné sur les axes, afin de ne garder que ce qui
+ * peut être visible à l'intérieur de celui-ci (typiquement la
+ * zone dessinée sur une toile, agrandie d'une marge).
+ *
+ * Les parties de la géométrie intérieures au rectangle ne sont
+ * jamais modifiées : les côtés qui traversent le bord du
+ * rectangle sont gardés entiers (et non coupés sur le bord), de
+ * sorte que le dessin à l'intérieur du rectangle est exactement
+ * le même qu'avant le découpage
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+public final class RectangleClipper {
+    private final Point BOTTOM_LEFT;
+    private final Point TOP_RIGHT;
+
+    /**
+     * Construit un découpeur selon le rectangle donné par
+     * ses coins bas-gauche et haut-droit
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param bottomLeft
+     *      le coin bas-gauche du rectangle
+     * @param topRight
+     *      le coin haut-droit du rectangle
+     *
+     * @throws IllegalArgumentException
+     *      si le coin haut-droit n'est pas au-dessus et à
+     *      droite du coin bas-gauche
+     */
+    public RectangleClipper(Point bottomLeft, Point topRight) {
+        if (!(bottomLeft.x() < topRight.x()) || !(bottomLeft.y() < topRight.y())) {
+            throw new IllegalArgumentException("The top right corner must be above and to the right of the bottom left corner");
+        }
+        BOTTOM_LEFT = bottomLeft;
+        TOP_RIGHT = topRight;
+    }
+
+    /**
+     * Getter du coin bas-gauche du rectangle
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return BOTTOM_LEFT
+     *      le coin bas-gauche
+     */
+    public Point bottomLeft() {
+        return BOTTOM_LEFT;
+    }
+
+    /**
+     * Getter du coin haut-droit du rectangle
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return TOP_RIGHT
+     *      le coin haut-droit
+     */
+    public Point topRight() {
+        return TOP_RIGHT;
+    }
+
+    /**
+     * Méthode qui retourne un découpeur dont le rectangle
+     * est agrandi de la marge donnée de chaque côté
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param margin
+     *      la marge, positive ou nulle
+     *
+     * @return new RectangleClipper(bottomLeft, topRight)
+     *      le découpeur agrandi
+     */
+    public RectangleClipper expandedBy(double margin) {
+        return new RectangleClipper(new Point(BOTTOM_LEFT.x() - margin, BOTTOM_LEFT.y() - margin), new Point(TOP_RIGHT.x() + margin, TOP_RIGHT.y() + margin));
+    }
+
+    /**
+     * Méthode qui découpe une polyligne à tracer : seuls sont
+     * gardés les côtés dont la boîte englobante rencontre le
+     * rectangle, regroupés en polylignes ouvertes consécutives
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param polyLine
+     *      la polyligne à découper
+     *
+     * @return pieces
+     *      la liste des morceaux visibles, qui est vide si la
+     *      polyligne est entièrement hors du rectangle, et qui
+     *      ne contient que la polyligne elle-même si aucun de
+     *      ses côtés n'est supprimé
+     */
+    public List<PolyLine> clipLine(PolyLine polyLine) {
+        if (!polyLine.boundingBoxIntersects(BOTTOM_LEFT, TOP_RIGHT)) {
+            return Collections.emptyList();
+        }
+        if (insideBox(polyLine)) {
+            return Collections.singletonList(polyLine);
+        }
+        int n = polyLine.pointsCount();
+        int sides = polyLine.isClosed() ? n : n - 1;
+        boolean[] kept = new boolean[sides];
+        int first = -1;
+        for (int i = 0 ; i < sides ; i++) {
+            kept[i] = sideIntersects(polyLine, i, (i + 1) % n);
+            if (!kept[i] && (first == -1)) {
+                first = i;
+            }
+        }
+        if (first == -1) {
+            return Collections.singletonList(polyLine);
+        }
+        // Les morceaux commencent après un côté supprimé, pour qu'un
+        // morceau d'une polyligne fermée puisse passer par son premier point
+        List<PolyLine> pieces = new ArrayList<PolyLine>();
+        double[] coordinates = new double[2 * (n + 1)];
+        int length = 0;
+        int start = polyLine.isClosed() ? first + 1 : 0;
+        for (int k = 0 ; k < sides ; k++) {
+            int i = (start + k) % sides;
+            if (kept[i]) {
+                if (length == 0) {
+                    coordinates[length++] = polyLine.x(i);
+                    coordinates[length++] = polyLine.y(i);
+                }
+                coordinates[length++] = polyLine.x((i + 1) % n);
+                coordinates[length++] = polyLine.y((i + 1) % n);
+            } else if (length > 0) {
+                pieces.add(new OpenPolyLine(coordinates, length));
+                length = 0;
+            }
+        }
+        if (length > 0) {
+            pieces.add(new OpenPolyLine(coordinates, length));
+        }
+        return pieces;
+    }
+
+    /**
+     * Méthode qui découpe une polyligne fermée à remplir, côté
+     * par côté du rectangle, à la manière de Sutherland-Hodgman.
+     * Chaque suite de points extérieurs à un côté est remplacée
+     * par un détour qui reste à l'extérieur de ce côté, ce qui ne
+     * change pas la partie de la surface intérieure au rectangle
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param ring
+     *      la polyligne fermée à découper
+     *
+     * @return ring
+     *      la polyligne fermée découpée, la polyligne elle-même
+     *      si elle est entièrement dans le rectangle, ou null si
+     *      elle est entièrement à l'extérieur
+     */
+    public ClosedPolyLine clipRing(ClosedPolyLine ring) {
+        if (!ring.boundingBoxIntersects(BOTTOM_LEFT, TOP_RIGHT)) {
+            return null;
+        }
+        if (insideBox(ring)) {
+            return ring;
+        }
+        double[] coordinates = new double[2 * ring.pointsCount()];
+        for (int i = 0 ; i < ring.pointsCount() ; i++) {
+            coordinates[2 * i] = ring.x(i);
+            coordinates[2 * i + 1] = ring.y(i);
+        }
+        int length = coordinates.length;
+        // Les côtés du rectangle : gauche, bas, droit, haut
+        for (int side = 0 ; (side < 4) && (length > 0) ; side++) {
+            double[] clipped = clipSide(coordinates, length, side);
+            length = clipped.length;
+            coordinates = clipped;
+        }
+        return (length < 6) ? null : new ClosedPolyLine(coordinates, length);
+    }
+
+    /**
+     * Méthode qui découpe un polygone à remplir, c'est-à-dire
+     * son enveloppe et chacun de ses trous
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param polygon
+     *      le polygone à découper
+     *
+     * @return polygon
+     *      le polygone découpé, le polygone lui-même s'il est
+     *      entièrement dans le rectangle, ou null si son
+     *      enveloppe est entièrement à l'extérieur
+     */
+    public Polygon clipPolygon(Polygon polygon) {
+        ClosedPolyLine shell = clipRing(polygon.shell());
+        if (shell == null) {
+            return null;
+        }
+        boolean changed = (shell != polygon.shell());
+        List<ClosedPolyLine> holes = new ArrayList<ClosedPolyLine>(polygon.holes().size());
+        for (ClosedPolyLine hole : polygon.holes()) {
+            ClosedPolyLine clipped = clipRing(hole);
+            changed |= (clipped != hole);
+            if (clipped != null) {
+                holes.add(clipped);
+            }
+        }
+        return changed ? new Polygon(shell, holes) : polygon;
+    }
+
+    private boolean insideBox(PolyLine polyLine) {
+        return (polyLine.minX() >= BOTTOM_LEFT.x()) && (polyLine.maxX() <= TOP_RIGHT.x()) && (polyLine.minY() >= BOTTOM_LEFT.y()) && (polyLine.maxY() <= TOP_RIGHT.y());
+    }
+
+    private boolean sideIntersects(PolyLine polyLine, int i, int j) {
+        return (Math.min(polyLine.x(i), polyLine.x(j)) <= TOP_RIGHT.x()) && (Math.max(polyLine.x(i), polyLine.x(j)) >= BOTTOM_LEFT.x())
+            && (Math.min(polyLine.y(i), polyLine.y(j)) <= TOP_RIGHT.y()) && (Math.max(polyLine.y(i), polyLine.y(j)) >= BOTTOM_LEFT.y());
+    }
+
+    // Distance (positive à l'intérieur) du point d'indice i au côté donné
+    private double inside(double[] coordinates, int i, int side) {
+        switch (side) {
+        case 0:
+            return coordinates[2 * i] - BOTTOM_LEFT.x();
+        case 1:
+            return coordinates[2 * i + 1] - BOTTOM_LEFT.y();
+        case 2:
+            return TOP_RIGHT.x() - coordinates[2 * i];
+        default:
+            return TOP_RIGHT.y() - coordinates[2 * i + 1];
+        }
+    }
+
+    // Une passe de Sutherland-Hodgman qui garde entiers les côtés qui
+    // traversent le bord : d'un point extérieur B (qui suit un point
+    // intérieur) au prochain point extérieur C (qui précède un point
+    // intérieur), le contour suit un détour parallèle au bord, à la
+    // distance du plus éloigné des deux ; il ne peut donc rencontrer
+    // un rayon partant d'un point intérieur vers l'intérieur
+    private double[] clipSide(double[] coordinates, int length, int side) {
+        int n = length / 2;
+        int first = -1;
+        for (int i = 0 ; i < n ; i++) {
+            if (inside(coordinates, i, side) >= 0) {
+                first = i;
+                break;
+            }
+        }
+        if (first == -1) {
+            return new double[0];
+        }
+        // Une suite d'au moins deux points extérieurs devient au plus quatre points
+        double[] clipped = new double[2 * length];
+        int clippedLength = 0;
+        int exit = -1;
+        for (int k = 0 ; k < n ; k++) {
+            int i = (first + k) % n;
+            int previous = (i + n - 1) % n;
+            int next = (i + 1) % n;
+            boolean in = inside(coordinates, i, side) >= 0;
+            if (in) {
+                clipped[clippedLength++] = coordinates[2 * i];
+                clipped[clippedLength++] = coordinates[2 * i + 1];
+            } else {
+                if (inside(coordinates, previous, side) >= 0) {
+                    // Premier point extérieur d'une suite : gardé
+                    exit = i;
+                    clipped[clippedLength++] = coordinates[2 * i];
+                    clipped[clippedLength++] = coordinates[2 * i + 1];
+                }
+                if (inside(coordinates, next, side) >= 0) {
+                    // Dernier point extérieur d'une suite : détour depuis exit
+                    if (i != exit) {
+                        double offset = Math.min(inside(coordinates, exit, side), inside(coordinates, i, side));
+                        clippedLength = addDetourPoint(clipped, clippedLength, coordinates, exit, side, offset);
+                        clippedLength = addDetourPoint(clipped, clippedLength, coordinates, i, side, offset);
+                        clippedLength = addPoint(clipped, clippedLength, coordinates[2 * i], coordinates[2 * i + 1]);
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(clipped, clippedLength);
+    }
+
+    // Ajoute la projection du point d'indice i sur la parallèle au
+    // côté donné, située à la distance offset (négative) de celui-ci
+    private int addDetourPoint(double[] clipped, int length, double[] coordinates, int i, int side, double offset) {
+        double x = coordinates[2 * i], y = coordinates[2 * i + 1];
+        switch (side) {
+        case 0:
+            x = BOTTOM_LEFT.x() + offset;
+            break;
+        case 1:
+            y = BOTTOM_LEFT.y() + offset;
+            break;
+        case 2:
+            x = TOP_RIGHT.x() - offset;
+            break;
+        default:
+            y = TOP_RIGHT.y() - offset;
+            break;
+        }
+        return addPoint(clipped, length, x, y);
+    }
+
+    // Ajoute un point, sauf s'il est égal au dernier point ajouté
+    private static int addPoint(double[] clipped, int length, double x, double y) {
+        if ((x != clipped[length - 2]) || (y != clipped[length - 1])) {
+            clipped[length++] = x;
+            clipped[length++] = y;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,99 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+
+/**
+ * Classe représentant une liste extensible d'entiers de
+ * type long, non emballés
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class LongList {
+    private long[] values;
+    private int size;
+
+    /**
+     * Construit une liste vide
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public LongList() {
+        values = new long[16];
+        size = 0;
+    }
+
+    /**
+     * Méthode qui ajoute un entier à la fin de la liste
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param value
+     *      l'entier à ajouter
+     */
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, 2 * size);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Getter de l'entier à la position donnée
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param index
+     *      la position de l'entier
+     *
+     * @return values[index]
+     *      l'entier à cette position
+     */
+    public long get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return values[index];
+    }
+
+    /**
+     * Getter du nombre d'entiers de la liste
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return size
+     *      le nombre d'entiers de la liste
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Méthode qui vide la liste (sans libérer la mémoire
+     * déjà allouée, afin qu'elle puisse être réutilisée)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Méthode qui retourne une copie des entiers de la liste
+     * sous forme d'un tableau de taille exacte
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return Arrays.copyOf(values, size)
+     *      le tableau des entiers de la liste
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,184 @@
+package ch.epfl.imhof.osm;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Classe représentant une table associative dont les clefs
+ * sont des entiers de type long, non emballés. La table est
+ * à adressage ouvert (sondage linéaire) et ne contient que
+ * des indices vers deux tableaux denses qui stockent les
+ * clefs et les valeurs dans l'ordre d'insertion
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class LongMap<V> {
+    private static final int INITIAL_CAPACITY = 16;
+    private int[] table;
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    /**
+     * Construit une table associative vide
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public LongMap() {
+        table = new int[2 * INITIAL_CAPACITY];
+        keys = new long[INITIAL_CAPACITY];
+        values = new Object[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Méthode qui associe la valeur donnée à la clef donnée,
+     * en remplaçant l'éventuelle valeur déjà associée à cette
+     * clef (qui garde alors sa position dans l'ordre d'insertion)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param key
+     *      la clef
+     * @param value
+     *      la valeur
+     */
+    public void put(long key, V value) {
+        int slot = slotOf(key);
+        if (table[slot] != 0) {
+            values[table[slot] - 1] = value;
+        } else {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            table[slot] = size;
+            if (2 * size > table.length) {
+                rehash(2 * table.length);
+            }
+        }
+    }
+
+    /**
+     * Méthode qui retourne la valeur associée à la clef
+     * donnée, ou null si la table ne contient pas cette clef
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param key
+     *      la clef dont on veut obtenir la valeur
+     *
+     * @return values[table[slot] - 1]
+     *      la valeur associée à la clef, ou null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = table[slotOf(key)];
+        return index == 0 ? null : (V)values[index - 1];
+    }
+
+    /**
+     * Méthode qui teste si la table contient la clef donnée
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param key
+     *      la clef à tester
+     *
+     * @return (table[slotOf(key)] != 0)
+     *      le résultat du test
+     */
+    public boolean containsKey(long key) {
+        return table[slotOf(key)] != 0;
+    }
+
+    /**
+     * Getter du nombre de paires clef/valeur de la table
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return size
+     *      le nombre de paires de la table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Méthode qui retourne une vue non modifiable des valeurs
+     * de la table, dans l'ordre d'insertion de leurs clefs
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return new AbstractList<V>() {}
+     *      la vue des valeurs
+     */
+    public List<V> values() {
+        return new AbstractList<V>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public V get(int index) {
+                if (index >= size) {
+                    throw new IndexOutOfBoundsException();
+                }
+                return (V)values[index];
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int slotOf(long key) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while ((table[slot] != 0) && (keys[table[slot] - 1] != key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0 ; i < size ; i++) {
+            int slot = hash(keys[i]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Méthode statique qui mélange les bits d'une clef, afin
+     * que des identifiants consécutifs ne forment pas de longues
+     * suites de cases occupées dans la table
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param key
+     *      la clef à mélanger
+     *
+     * @return (int)(h ^ (h >>> 32))
+     *      le code de hachage de la clef
+     */
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+}
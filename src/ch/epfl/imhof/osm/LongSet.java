@@ -0,0 +1,118 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+
+/**
+ * Classe représentant un ensemble d'entiers de type long,
+ * non emballés, stockés dans une table à adressage ouvert
+ * (sondage linéaire)
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class LongSet {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private long[] table;
+    private boolean containsEmpty;
+    private int size;
+
+    /**
+     * Construit un ensemble vide
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public LongSet() {
+        table = new long[32];
+        Arrays.fill(table, EMPTY);
+        containsEmpty = false;
+        size = 0;
+    }
+
+    /**
+     * Méthode qui ajoute l'entier donné à l'ensemble
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param value
+     *      l'entier à ajouter
+     *
+     * @return true
+     *      si l'entier ne faisait pas encore partie de l'ensemble
+     * @return false
+     *      sinon
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            boolean added = !containsEmpty;
+            containsEmpty = true;
+            return added;
+        }
+        int slot = slotOf(value);
+        if (table[slot] == value) {
+            return false;
+        }
+        table[slot] = value;
+        size++;
+        if (2 * size > table.length) {
+            rehash(2 * table.length);
+        }
+        return true;
+    }
+
+    /**
+     * Méthode qui ajoute tous les entiers du tableau donné
+     * à l'ensemble
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param values
+     *      les entiers à ajouter
+     */
+    public void addAll(long[] values) {
+        for (long value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * Méthode qui teste si l'ensemble contient l'entier donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param value
+     *      l'entier à tester
+     *
+     * @return (table[slotOf(value)] == value)
+     *      le résultat du test
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        return table[slotOf(value)] == value;
+    }
+
+    private int slotOf(long value) {
+        int mask = table.length - 1;
+        int slot = LongMap.hash(value) & mask;
+        while ((table[slot] != EMPTY) && (table[slot] != value)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = table;
+        table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        for (long value : old) {
+            if (value != EMPTY) {
+                table[slotOf(value)] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Classe représentant un tampon qui enregistre, sous une
+ * forme compacte, les éléments lus dans une partie d'un
+ * fichier OSM, afin de pouvoir les retransmettre plus tard
+ * et dans le même ordre à un autre récepteur. Cela permet de
+ * décoder plusieurs parties d'un fichier en parallèle tout en
+ * assemblant la carte dans l'ordre du fichier
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class OSMEventBuffer implements OSMHandler {
+    private static final byte NODE = 0;
+    private static final byte START_WAY = 1;
+    private static final byte WAY_NODE = 2;
+    private static final byte END_WAY = 3;
+    private static final byte START_RELATION = 4;
+    private static final byte MEMBER = 5;
+    private static final byte END_RELATION = 6;
+    private static final byte TAG = 7;
+    private static final Type[] TYPES = Type.values();
+
+    private byte[] events = new byte[64];
+    private int eventCount = 0;
+    private long[] longs = new long[64];
+    private int longCount = 0;
+    private int[] ints = new int[64];
+    private int intCount = 0;
+    private String[] strings = new String[16];
+    private int stringCount = 0;
+
+    @Override
+    public void node(long id, int longitude, int latitude) {
+        addEvent(NODE);
+        addLong(id);
+        addInt(longitude);
+        addInt(latitude);
+    }
+
+    @Override
+    public void startWay(long id) {
+        addEvent(START_WAY);
+        addLong(id);
+    }
+
+    @Override
+    public void wayNode(long ref) {
+        addEvent(WAY_NODE);
+        addLong(ref);
+    }
+
+    @Override
+    public void endWay() {
+        addEvent(END_WAY);
+    }
+
+    @Override
+    public void startRelation(long id) {
+        addEvent(START_RELATION);
+        addLong(id);
+    }
+
+    @Override
+    public void member(Type type, long ref, String role) {
+        addEvent(MEMBER);
+        addLong(ref);
+        addInt(type.ordinal());
+        addString(role);
+    }
+
+    @Override
+    public void endRelation() {
+        addEvent(END_RELATION);
+    }
+
+    @Override
+    public void tag(String key, String value) {
+        addEvent(TAG);
+        addString(key);
+        addString(value);
+    }
+
+    /**
+     * Méthode qui retransmet au récepteur passé en paramètre
+     * tous les éléments enregistrés, dans leur ordre d'arrivée
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param handler
+     *      le récepteur des éléments
+     */
+    public void replay(OSMHandler handler) {
+        int l = 0;
+        int i = 0;
+        int s = 0;
+        for (int e = 0 ; e < eventCount ; e++) {
+            switch (events[e]) {
+                case NODE:
+                    handler.node(longs[l++], ints[i], ints[i + 1]);
+                    i += 2;
+                    break;
+                case START_WAY: handler.startWay(longs[l++]); break;
+                case WAY_NODE: handler.wayNode(longs[l++]); break;
+                case END_WAY: handler.endWay(); break;
+                case START_RELATION: handler.startRelation(longs[l++]); break;
+                case MEMBER: handler.member(TYPES[ints[i++]], longs[l++], strings[s++]); break;
+                case END_RELATION: handler.endRelation(); break;
+                case TAG:
+                    handler.tag(strings[s], strings[s + 1]);
+                    s += 2;
+                    break;
+                default: throw new IllegalStateException("Unknown event: " + events[e]);
+            }
+        }
+    }
+
+    /**
+     * Méthode qui attend la fin de la tâche donnée et retourne
+     * le tampon qu'elle a rempli, en relançant telle quelle
+     * l'exception qu'elle a éventuellement levée
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param task
+     *      la tâche qui décode une partie du fichier
+     *
+     * @throws IOException
+     *      si la tâche a levé une telle exception, ou si
+     *      l'attente est interrompue
+     *
+     * @return task.get()
+     *      le tampon rempli par la tâche
+     */
+    static OSMEventBuffer join(Future<OSMEventBuffer> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding the file.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void addEvent(byte event) {
+        if (eventCount == events.length) {
+            events = Arrays.copyOf(events, 2 * eventCount);
+        }
+        events[eventCount++] = event;
+    }
+
+    private void addLong(long value) {
+        if (longCount == longs.length) {
+            longs = Arrays.copyOf(longs, 2 * longCount);
+        }
+        longs[longCount++] = value;
+    }
+
+    private void addInt(int value) {
+        if (intCount == ints.length) {
+            ints = Arrays.copyOf(ints, 2 * intCount);
+        }
+        ints[intCount++] = value;
+    }
+
+    private void addString(String value) {
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, 2 * stringCount);
+        }
+        strings[stringCount++] = value;
+    }
+}
@@ -0,0 +1,262 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import ch.epfl.imhof.PointGeo;
+import static ch.epfl.imhof.osm.OSMNodeStore.toFixed;
+
+/**
+ * Classe représentant un filtre de lecture des fichiers
+ * OSM, qui détermine quels chemins et quelles relations
+ * méritent d'être gardés (et donc quels nœuds doivent
+ * être lus). Un filtre peut également être restreint à
+ * une zone géographique rectangulaire : seuls les chemins
+ * et les relations qui touchent cette zone sont alors gardés
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+public final class OSMFilter {
+    private final Set<String> KEYS_OF_INTEREST;
+    private final Set<String> ATTRIBUTE_KEYS;
+    private final boolean HAS_BOUNDING_BOX;
+    private final int MIN_LONGITUDE;
+    private final int MIN_LATITUDE;
+    private final int MAX_LONGITUDE;
+    private final int MAX_LATITUDE;
+
+    /**
+     * Construit un filtre qui garde tous les chemins et
+     * toutes les relations
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public OSMFilter() {
+        this(null, null, false, 0, 0, 0, 0);
+    }
+
+    /**
+     * Construit un filtre qui garde les chemins et les
+     * relations possédant au moins un attribut dont la
+     * clef est dans l'ensemble passé en paramètre
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param keysOfInterest
+     *      l'ensemble des clefs intéressantes
+     */
+    public OSMFilter(Set<String> keysOfInterest) {
+        this(Collections.unmodifiableSet(new HashSet<String>(keysOfInterest)), null, false, 0, 0, 0, 0);
+    }
+
+    private OSMFilter(Set<String> keysOfInterest, Set<String> attributeKeys, boolean hasBoundingBox, int minLongitude, int minLatitude, int maxLongitude, int maxLatitude) {
+        KEYS_OF_INTEREST = keysOfInterest;
+        ATTRIBUTE_KEYS = attributeKeys;
+        HAS_BOUNDING_BOX = hasBoundingBox;
+        MIN_LONGITUDE = minLongitude;
+        MIN_LATITUDE = minLatitude;
+        MAX_LONGITUDE = maxLongitude;
+        MAX_LATITUDE = maxLatitude;
+    }
+
+    /**
+     * Méthode qui retourne un filtre identique à celui-ci,
+     * mais restreint à la zone rectangulaire délimitée par
+     * les coins donnés, élargie de la marge donnée. Un chemin
+     * est gardé (en entier) si sa boîte englobante touche la
+     * zone, même si aucun de ses nœuds n'y est (une route qui
+     * la traverse, une forêt qui la contient), et une relation
+     * l'est si la boîte englobante de ses membres la touche. La
+     * marge permet de garder les éléments dessinés près du bord
+     * de la zone, par exemple les traits épais
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param bottomLeft
+     *      le coin bas-gauche de la zone
+     * @param topRight
+     *      le coin haut-droite de la zone
+     * @param margin
+     *      la marge ajoutée de chaque côté de la zone, en radians
+     *
+     * @throws IllegalArgumentException
+     *      si les coins ne sont pas dans le bon ordre ou si
+     *      la marge est négative
+     *
+     * @return new OSMFilter(...)
+     *      le filtre restreint à la zone
+     */
+    public OSMFilter withBoundingBox(PointGeo bottomLeft, PointGeo topRight, double margin) {
+        if ((bottomLeft.longitude() > topRight.longitude()) || (bottomLeft.latitude() > topRight.latitude())) {
+            throw new IllegalArgumentException("The bottom left corner must be below and to the left of the top right corner.");
+        }
+        if (!(margin >= 0)) {
+            throw new IllegalArgumentException("The margin must be positive.");
+        }
+        return new OSMFilter(KEYS_OF_INTEREST, ATTRIBUTE_KEYS, true,
+                toFixed(Math.toDegrees(bottomLeft.longitude() - margin)), toFixed(Math.toDegrees(bottomLeft.latitude() - margin)),
+                toFixed(Math.toDegrees(topRight.longitude() + margin)), toFixed(Math.toDegrees(topRight.latitude() + margin)));
+    }
+
+    /**
+     * Méthode qui retourne un filtre identique à celui-ci,
+     * mais qui ne garde, sur les entités lues, que les
+     * attributs dont la clef est dans l'ensemble passé en
+     * paramètre (les autres attributs ne sont jamais construits).
+     * Le choix des chemins et des relations gardés n'en
+     * dépend pas
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param attributeKeys
+     *      l'ensemble des clefs des attributs à garder
+     *
+     * @return new OSMFilter(...)
+     *      le filtre ne gardant que ces attributs
+     */
+    public OSMFilter withAttributeKeys(Set<String> attributeKeys) {
+        return new OSMFilter(KEYS_OF_INTEREST, Collections.unmodifiableSet(new HashSet<String>(attributeKeys)), HAS_BOUNDING_BOX,
+                MIN_LONGITUDE, MIN_LATITUDE, MAX_LONGITUDE, MAX_LATITUDE);
+    }
+
+    /**
+     * Méthode qui teste si un attribut ayant la clef passée
+     * en paramètre rend intéressant le chemin ou la relation
+     * qui le possède
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param key
+     *      la clef à tester
+     *
+     * @return KEYS_OF_INTEREST.contains(key)
+     *      le résultat du test
+     */
+    public boolean isOfInterest(String key) {
+        return (KEYS_OF_INTEREST == null) || KEYS_OF_INTEREST.contains(key);
+    }
+
+    /**
+     * Méthode qui teste si le filtre garde tous les chemins
+     * et toutes les relations, quels que soient leurs attributs
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return (KEYS_OF_INTEREST == null)
+     *      le résultat du test
+     */
+    public boolean keepsAllKeys() {
+        return KEYS_OF_INTEREST == null;
+    }
+
+    /**
+     * Getter de l'ensemble des clefs intéressantes
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @throws IllegalStateException
+     *      si le filtre garde tous les chemins et toutes
+     *      les relations
+     *
+     * @return KEYS_OF_INTEREST
+     *      l'ensemble non modifiable des clefs intéressantes
+     */
+    public Set<String> keysOfInterest() {
+        if (KEYS_OF_INTEREST == null) {
+            throw new IllegalStateException("This filter keeps all keys.");
+        }
+        return KEYS_OF_INTEREST;
+    }
+
+    /**
+     * Méthode qui teste si les attributs ayant la clef passée
+     * en paramètre doivent être gardés sur les entités lues
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param key
+     *      la clef à tester
+     *
+     * @return ATTRIBUTE_KEYS.contains(key)
+     *      le résultat du test
+     */
+    public boolean keepsAttribute(String key) {
+        return (ATTRIBUTE_KEYS == null) || ATTRIBUTE_KEYS.contains(key);
+    }
+
+    /**
+     * Méthode qui teste si le filtre garde tous les attributs
+     * des entités lues
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return (ATTRIBUTE_KEYS == null)
+     *      le résultat du test
+     */
+    public boolean keepsAllAttributes() {
+        return ATTRIBUTE_KEYS == null;
+    }
+
+    /**
+     * Méthode qui teste si le filtre est restreint à une
+     * zone géographique
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return HAS_BOUNDING_BOX
+     *      le résultat du test
+     */
+    public boolean hasBoundingBox() {
+        return HAS_BOUNDING_BOX;
+    }
+
+    /**
+     * Méthode qui retourne les côtés de la zone du filtre (marge
+     * comprise) au-delà desquels se trouve la position donnée :
+     * 1 pour l'ouest, 2 pour l'est, 4 pour le sud et 8 pour le
+     * nord, combinés par un ou, ou 0 si la position est dans la
+     * zone. La boîte englobante d'un ensemble de positions touche
+     * la zone si et seulement si le et de leurs côtés vaut 0.
+     * Toutes les positions sont dans la zone si le filtre n'est
+     * pas restreint à une zone
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param longitude
+     *      la longitude, en dix-millionièmes de degré
+     * @param latitude
+     *      la latitude, en dix-millionièmes de degré
+     *
+     * @return sides
+     *      les côtés de la zone au-delà desquels est la position
+     */
+    public int boundingBoxSides(int longitude, int latitude) {
+        int sides = 0;
+        if (HAS_BOUNDING_BOX) {
+            if (longitude < MIN_LONGITUDE) {
+                sides |= 1;
+            } else if (longitude > MAX_LONGITUDE) {
+                sides |= 2;
+            }
+            if (latitude < MIN_LATITUDE) {
+                sides |= 4;
+            } else if (latitude > MAX_LATITUDE) {
+                sides |= 8;
+            }
+        }
+        return sides;
+    }
+}
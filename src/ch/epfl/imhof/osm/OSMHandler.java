@@ -0,0 +1,111 @@
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Interface qui représente un récepteur des éléments
+ * lus dans un fichier OSM, dans l'ordre dans lequel
+ * ils apparaissent dans le fichier (les attributs
+ * reçus concernent toujours le chemin ou la relation
+ * en cours de lecture)
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+interface OSMHandler {
+
+    /**
+     * Méthode appelée lorsqu'un nœud est lu
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param id
+     *      l'identifiant du nœud
+     * @param longitude
+     *      la longitude du nœud, en dix-millionièmes de degré
+     * @param latitude
+     *      la latitude du nœud, en dix-millionièmes de degré
+     */
+    public void node(long id, int longitude, int latitude);
+
+    /**
+     * Méthode appelée au début de la lecture d'un chemin
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param id
+     *      l'identifiant du chemin
+     */
+    public void startWay(long id);
+
+    /**
+     * Méthode appelée pour chaque référence à un nœud
+     * du chemin en cours de lecture
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param ref
+     *      l'identifiant du nœud référencé
+     */
+    public void wayNode(long ref);
+
+    /**
+     * Méthode appelée à la fin de la lecture d'un chemin
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public void endWay();
+
+    /**
+     * Méthode appelée au début de la lecture d'une relation
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param id
+     *      l'identifiant de la relation
+     */
+    public void startRelation(long id);
+
+    /**
+     * Méthode appelée pour chaque membre de la relation
+     * en cours de lecture
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param type
+     *      le type du membre
+     * @param ref
+     *      l'identifiant de l'entité référencée
+     * @param role
+     *      le rôle du membre
+     */
+    public void member(Type type, long ref, String role);
+
+    /**
+     * Méthode appelée à la fin de la lecture d'une relation
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public void endRelation();
+
+    /**
+     * Méthode appelée pour chaque attribut du chemin ou de
+     * la relation en cours de lecture
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param key
+     *      la clef de l'attribut
+     * @param value
+     *      la valeur de l'attribut
+     */
+    public void tag(String key, String value);
+}
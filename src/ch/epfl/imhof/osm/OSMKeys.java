@@ -0,0 +1,111 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import ch.epfl.imhof.AttributeDictionary;
+import ch.epfl.imhof.Attributes;
+
+/**
+ * Classe regroupant les clefs d'attributs qui déterminent
+ * comment un chemin est transformé : si un chemin fermé est
+ * une surface, et s'il possède des attributs gardés pour les
+ * polylignes ou pour les polygones. La classification d'un
+ * ensemble d'attributs est calculée en un seul parcours de
+ * ses paires, à l'aide des indices des clefs dans le
+ * dictionnaire des attributs
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class OSMKeys {
+    static final Set<String> AREA_VALUES = unmodifiableSet("yes", "1", "true");
+    static final Set<String> AREA_KEYS = unmodifiableSet("aeroway", "amenity", "building", "harbour", "historic",
+            "landuse", "leisure", "man_made", "military", "natural",
+            "office", "place", "power", "public_transport", "shop",
+            "sport", "tourism", "water", "waterway", "wetland");
+    static final Set<String> POLYLINE_KEYS = unmodifiableSet("bridge", "highway", "layer", "man_made", "railway", "tunnel", "waterway");
+    static final Set<String> POLYGON_KEYS = unmodifiableSet("building", "landuse", "layer", "leisure", "natural", "waterway");
+
+    /** Indicateur : l'ensemble fait d'un chemin fermé une surface */
+    static final int AREA = 1;
+    /** Indicateur : l'ensemble contient une clef de POLYLINE_KEYS */
+    static final int POLYLINE_KEY = 2;
+    /** Indicateur : l'ensemble contient une clef de POLYGON_KEYS */
+    static final int POLYGON_KEY = 4;
+
+    // Les indices triés des clefs des trois ensembles, et leurs indicateurs
+    private static final int[] KEY_INDICES;
+    private static final int[] KEY_FLAGS;
+    private static final int AREA_KEY_INDEX = AttributeDictionary.index("area");
+    private static final int[] AREA_VALUE_INDICES;
+
+    static {
+        Set<String> keys = new HashSet<String>(AREA_KEYS);
+        keys.addAll(POLYLINE_KEYS);
+        keys.addAll(POLYGON_KEYS);
+        long[] sorted = new long[keys.size()];
+        int i = 0;
+        for (String key : keys) {
+            // Les valeurs de ces clefs sont peu nombreuses et souvent comparées
+            AttributeDictionary.internValuesOf(key);
+            int flags = (AREA_KEYS.contains(key) ? AREA : 0) | (POLYLINE_KEYS.contains(key) ? POLYLINE_KEY : 0) | (POLYGON_KEYS.contains(key) ? POLYGON_KEY : 0);
+            sorted[i++] = ((long)AttributeDictionary.index(key) << 32) | flags;
+        }
+        Arrays.sort(sorted);
+        KEY_INDICES = new int[sorted.length];
+        KEY_FLAGS = new int[sorted.length];
+        for (i = 0 ; i < sorted.length ; i++) {
+            KEY_INDICES[i] = (int)(sorted[i] >>> 32);
+            KEY_FLAGS[i] = (int)sorted[i];
+        }
+        AttributeDictionary.internValuesOf("area");
+        AREA_VALUE_INDICES = new int[AREA_VALUES.size()];
+        i = 0;
+        for (String value : AREA_VALUES) {
+            AREA_VALUE_INDICES[i++] = AttributeDictionary.index(value);
+        }
+    }
+
+    private OSMKeys() {}
+
+    /**
+     * Méthode statique qui classifie un ensemble d'attributs
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param attributes
+     *      l'ensemble d'attributs
+     *
+     * @return flags
+     *      la combinaison des indicateurs AREA, POLYLINE_KEY
+     *      et POLYGON_KEY qui s'appliquent à l'ensemble
+     */
+    static int flags(Attributes attributes) {
+        int flags = 0;
+        for (int i = 0 ; i < attributes.size() ; i++) {
+            int key = attributes.keyIndexAt(i);
+            if (key == AREA_KEY_INDEX) {
+                int value = attributes.valueIndex(key);
+                for (int areaValue : AREA_VALUE_INDICES) {
+                    if (value == areaValue) {
+                        flags |= AREA;
+                    }
+                }
+            } else {
+                int j = Arrays.binarySearch(KEY_INDICES, key);
+                if (j >= 0) {
+                    flags |= KEY_FLAGS[j];
+                }
+            }
+        }
+        return flags;
+    }
+
+    private static Set<String> unmodifiableSet(String... strings) {
+        return Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(strings)));
+    }
+}
@@ -3,9 +3,7 @@ package ch.epfl.imhof.osm;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Classe représentant une carte OpenStreetMap
@@ -62,15 +60,18 @@ public final class OSMMap {
     
     /**
      * Bâtisseur de la classe OSMMap. Permet de construire
-     * progressivement une carte OSM
+     * progressivement une carte OSM. Les chemins et les relations
+     * sont indexés par des tables à clefs longues non emballées,
+     * les nœuds sont stockés en colonnes, et la carte construite
+     * contient les entités dans leur ordre d'ajout
      * 
      * @author Andrey Batasov (250149)
      * @author Raja Soufi (247680)
      */
     public final static class Builder {
-        private final Map<Long, OSMWay> WAYS;
-        private final Map<Long, OSMRelation> RELATIONS;
-        private final Map<Long, OSMNode> NODES;
+        private final LongMap<OSMWay> WAYS;
+        private final LongMap<OSMRelation> RELATIONS;
+        private final OSMNodeStore NODES;
         
         /**
          * Construit progressivement la carte OSM
@@ -79,38 +80,104 @@ public final class OSMMap {
          * @author Raja Soufi (247680)
          */
         public Builder() {
-            WAYS = new HashMap<Long, OSMWay>();
-            RELATIONS = new HashMap<Long, OSMRelation>();
-            NODES = new HashMap<Long, OSMNode>();
+            WAYS = new LongMap<OSMWay>();
+            RELATIONS = new LongMap<OSMRelation>();
+            NODES = new OSMNodeStore();
         }
         
         /**
-         * Méthode qui ajoute le nœud donné au bâtisseur
+         * Méthode qui ajoute le nœud donné au bâtisseur (seuls
+         * son identifiant et sa position sont conservés)
          * 
          * @author Andrey Batasov (250149)
          * @author Raja Soufi (247680)
          * 
          * @param newNode
          *      Le nœud à rajouter
+         * 
+         * @throws IllegalStateException
+         *      Si un nœud a déjà été recherché dans le bâtisseur
          */
         public void addNode(OSMNode node) {
-            NODES.put(node.id(), node);
+            NODES.add(node);
+        }
+        
+        /**
+         * Méthode qui ajoute au bâtisseur le nœud ayant
+         * l'identifiant et la position (en virgule fixe)
+         * donnés
+         * 
+         * @author Andrey Batasov (250149)
+         * @author Raja Soufi (247680)
+         * 
+         * @param id
+         *      L'identifiant du nœud
+         * @param longitude
+         *      La longitude du nœud, en dix-millionièmes de degré
+         * @param latitude
+         *      La latitude du nœud, en dix-millionièmes de degré
+         * 
+         * @throws IllegalStateException
+         *      Si un nœud a déjà été recherché dans le bâtisseur
+         */
+        void addNode(long id, int longitude, int latitude) {
+            NODES.add(id, longitude, latitude);
+        }
+        
+        /**
+         * Méthode qui termine l'ajout des nœuds au bâtisseur, qui
+         * peuvent ensuite être recherchés par identifiant (la
+         * première recherche la termine sinon)
+         * 
+         * @author Andrey Batasov (250149)
+         * @author Raja Soufi (247680)
+         */
+        void endNodes() {
+            NODES.finish();
         }
         
         /**
          * Méthode qui retourne le nœud dont l'identifiant unique
-         * est égal à celui donné, ou null
-         * si ce nœud n'a pas été ajouté précédemment au bâtisseur
+         * est égal à celui donné (le dernier ajouté si plusieurs
+         * nœuds ont cet identifiant), ou null si ce nœud n'a pas
+         * été ajouté précédemment au bâtisseur. Aucun nœud ne peut
+         * être ajouté ensuite
          * 
          * @param id
          *      L'identifiant dont on va trouver le nœud correspondant
-         * @return NODES.get(id)
+         * @return NODES.node(index)
          *      Le nœud dont on veut trouver avec l'identifiant passé
          *      en paramètre, ou null si l'identifiant n'est associé à
          *      aucun nœud
          */
         public OSMNode nodeForId(long id) {
-            return NODES.get(id);
+            int index = NODES.indexOf(id);
+            return index < 0 ? null : NODES.node(index);
+        }
+        
+        /**
+         * Méthode qui retourne l'indice, dans le stockage des
+         * nœuds du bâtisseur, du nœud dont l'identifiant est
+         * égal à celui donné, ou -1 si ce nœud n'a pas été
+         * ajouté précédemment au bâtisseur
+         * 
+         * @param id
+         *      L'identifiant du nœud
+         * @return NODES.indexOf(id)
+         *      L'indice du nœud, ou -1
+         */
+        int nodeIndexForId(long id) {
+            return NODES.indexOf(id);
+        }
+        
+        /**
+         * Getter du stockage des nœuds du bâtisseur
+         * 
+         * @return NODES
+         *      Le stockage des nœuds
+         */
+        OSMNodeStore nodeStore() {
+            return NODES;
         }
         
         /**
@@ -182,6 +249,7 @@ public final class OSMMap {
          *      la liste des relations passées au constructeur
          */
         public OSMMap build() {
+            NODES.trim();
             return new OSMMap(WAYS.values(), RELATIONS.values());
         }
     }
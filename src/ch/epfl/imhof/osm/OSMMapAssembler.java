@@ -0,0 +1,157 @@
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Classe représentant un assembleur de cartes OSM, qui
+ * construit une carte à partir des éléments lus dans un
+ * fichier OSM, en ignorant éventuellement les entités qui
+ * ne font pas partie d'une sélection donnée, ainsi que les
+ * attributs que le filtre de lecture ne garde pas. Comme dans
+ * les fichiers OSM, les nœuds doivent précéder les chemins et
+ * les relations : ceux qui les suivent sont ignorés
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class OSMMapAssembler implements OSMHandler {
+    private final OSMMap.Builder MAP;
+    private final OSMSelection SELECTION;
+    private final OSMFilter FILTER;
+    private OSMWay.Builder way = null;
+    private OSMRelation.Builder relation = null;
+    private boolean readsNodes = true;
+
+    /**
+     * Construit un assembleur qui garde toutes les entités
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public OSMMapAssembler() {
+        this(null, new OSMFilter());
+    }
+
+    /**
+     * Construit un assembleur qui ne garde que les entités
+     * faisant partie de la sélection passée en paramètre, et
+     * seulement ceux de leurs attributs que le filtre garde
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param selection
+     *      la sélection des entités à garder, ou null pour
+     *      garder toutes les entités
+     * @param filter
+     *      le filtre qui détermine les attributs à garder
+     */
+    public OSMMapAssembler(OSMSelection selection, OSMFilter filter) {
+        MAP = new OSMMap.Builder();
+        SELECTION = selection;
+        FILTER = filter;
+    }
+
+    @Override
+    public void node(long id, int longitude, int latitude) {
+        if (readsNodes && ((SELECTION == null) || SELECTION.containsNode(id))) {
+            MAP.addNode(id, longitude, latitude);
+        }
+    }
+
+    @Override
+    public void startWay(long id) {
+        endNodes();
+        if ((SELECTION == null) || SELECTION.containsWay(id)) {
+            way = new OSMWay.Builder(id);
+        }
+    }
+
+    @Override
+    public void wayNode(long ref) {
+        if (way != null) {
+            int index = MAP.nodeIndexForId(ref);
+            if (index < 0) {
+                way.setIncomplete();
+            } else {
+                way.addNode(MAP.nodeStore(), index);
+            }
+        }
+    }
+
+    @Override
+    public void endWay() {
+        if ((way != null) && !way.isIncomplete()) {
+            MAP.addWay(way.build());
+        }
+        way = null;
+    }
+
+    @Override
+    public void startRelation(long id) {
+        endNodes();
+        if ((SELECTION == null) || SELECTION.containsRelation(id)) {
+            relation = new OSMRelation.Builder(id);
+        }
+    }
+
+    @Override
+    public void member(Type type, long ref, String role) {
+        if (relation != null) {
+            OSMEntity member;
+            switch (type) {
+                case NODE: member = MAP.nodeForId(ref); break;
+                case WAY: member = MAP.wayForId(ref); break;
+                case RELATION: member = MAP.relationForId(ref); break;
+                default: member = null; break;
+            }
+            if (member == null) {
+                relation.setIncomplete();
+            } else {
+                relation.addMember(type, role, member);
+            }
+        }
+    }
+
+    @Override
+    public void endRelation() {
+        if ((relation != null) && !relation.isIncomplete()) {
+            MAP.addRelation(relation.build());
+        }
+        relation = null;
+    }
+
+    @Override
+    public void tag(String key, String value) {
+        if (!FILTER.keepsAttribute(key)) {
+            return;
+        }
+        if (way != null) {
+            way.setAttribute(key, value);
+        } else if (relation != null) {
+            relation.setAttribute(key, value);
+        }
+    }
+
+    // Termine l'ajout des nœuds : leurs identifiants ne sont triés
+    // qu'une seule fois, avant toute recherche
+    private void endNodes() {
+        if (readsNodes) {
+            readsNodes = false;
+            MAP.endNodes();
+        }
+    }
+
+    /**
+     * Méthode qui construit la carte OSM assemblée
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return MAP.build()
+     *      la carte OSM assemblée
+     */
+    public OSMMap build() {
+        return MAP.build();
+    }
+}
@@ -3,6 +3,10 @@ package ch.epfl.imhof.osm;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
 import org.xml.sax.Attributes;
@@ -12,8 +16,8 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 import org.xml.sax.helpers.XMLReaderFactory;
 
-import ch.epfl.imhof.PointGeo;
 import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+import static ch.epfl.imhof.osm.OSMNodeStore.toFixed;
 import static java.lang.Double.parseDouble;
 import static java.lang.Long.parseLong;
 
@@ -32,6 +36,8 @@ public final class OSMMapReader {
     private static final String ID = "id";
     private static final String K = "k";
     private static final String V = "v";
+    // La taille minimale des morceaux décodés en parallèle par scanOSMFile
+    private static final int CHUNK_SIZE = 1 << 20;
 
     private OSMMapReader() {}
 
@@ -60,147 +66,342 @@ public final class OSMMapReader {
      *      à partir de la OSMMap bâtie
      */
     public static OSMMap readOSMFile(String fileName, boolean unGZip) throws SAXException, IOException {
-        OSMMap.Builder map = new OSMMap.Builder();
-        InputStream stream;
-        if (unGZip) {
-            stream = new GZIPInputStream(OSMMapReader.class.getClassLoader().getResourceAsStream(fileName));
-        } else {
-            stream = OSMMapReader.class.getClassLoader().getResourceAsStream(fileName);
-        }
+        OSMMapAssembler map = new OSMMapAssembler();
+        parse(fileName, unGZip, map);
+        return map.build();
+    }
+
+    /**
+     * Méthode qui lit le fichier OSM ayant le nom passé
+     * en plusieurs passes : les premières passes
+     * déterminent, à l'aide du filtre passé en paramètre,
+     * les relations puis les chemins à garder ainsi que les
+     * nœuds dont ils ont besoin, et la dernière passe ne
+     * construit que ces entités. La mémoire nécessaire
+     * dépend ainsi du contenu gardé et non plus de la
+     * taille du fichier
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param fileName
+     *      Le nom du fichier à lire
+     * @param unGZip
+     *      Valeur booléenne qui détermine si le fichier est
+     *      compressé, et doit donc être décompressé avant
+     *      d'être lu, ou pas
+     * @param filter
+     *      Le filtre qui détermine les chemins et les
+     *      relations à garder, ainsi que leurs attributs
+     *
+     * @throws SAXException
+     *      si une erreur est rencontrée dans le format
+     *      du fichier XML contenant la carte
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée
+     *
+     * @return map.build()
+     *      une version finale et immuable d'une OSMMap
+     *      ne contenant que les entités gardées
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip, OSMFilter filter) throws SAXException, IOException {
+        OSMSelection.Builder selection = new OSMSelection.Builder(filter);
+        do {
+            parse(fileName, unGZip, selection);
+        } while (selection.nextPass());
+        OSMMapAssembler map = new OSMMapAssembler(selection.build(), filter);
+        parse(fileName, unGZip, map);
+        return map.build();
+    }
+
+    /**
+     * Méthode qui lit le fichier OSM ayant le nom passé en
+     * paramètre à l'aide d'un analyseur spécialisé, qui lit
+     * directement les octets du fichier au lieu de passer par
+     * SAX. La carte obtenue est identique à celle que retourne
+     * readOSMFile(String, boolean), mais elle est construite
+     * plus rapidement et en allouant beaucoup moins d'objets,
+     * le fichier étant décodé en parallèle sur le pool de fils
+     * d'exécution commun
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param fileName
+     *      Le nom du fichier à lire
+     * @param unGZip
+     *      Valeur booléenne qui détermine si le fichier est
+     *      compressé, et doit donc être décompressé avant
+     *      d'être lu, ou pas
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée,
+     *      ou si le fichier est mal formé
+     *
+     * @return scanOSMFile(fileName, unGZip, ForkJoinPool.commonPool())
+     *      une version finale et immuable d'une OSMMap
+     *      à partir de la OSMMap bâtie
+     */
+    public static OSMMap scanOSMFile(String fileName, boolean unGZip) throws IOException {
+        return scanOSMFile(fileName, unGZip, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Méthode qui lit le fichier OSM ayant le nom passé en
+     * paramètre à l'aide de l'analyseur spécialisé, en le
+     * découpant en morceaux qui sont décodés en parallèle sur
+     * le pool donné. Les éléments décodés sont ajoutés à la
+     * carte dans l'ordre du fichier, de sorte que la carte
+     * obtenue ne dépend pas du nombre de fils d'exécution
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param fileName
+     *      Le nom du fichier à lire
+     * @param unGZip
+     *      Valeur booléenne qui détermine si le fichier est
+     *      compressé, et doit donc être décompressé avant
+     *      d'être lu, ou pas
+     * @param pool
+     *      Le pool sur lequel les morceaux sont décodés
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée,
+     *      ou si le fichier est mal formé
+     *
+     * @return map.build()
+     *      une version finale et immuable d'une OSMMap
+     *      à partir de la OSMMap bâtie
+     */
+    public static OSMMap scanOSMFile(String fileName, boolean unGZip, ForkJoinPool pool) throws IOException {
+        OSMMapAssembler map = new OSMMapAssembler();
+        scan(fileName, unGZip, map, pool);
+        return map.build();
+    }
+
+    /**
+     * Méthode qui lit le fichier OSM ayant le nom passé en
+     * paramètre en plusieurs passes, comme
+     * readOSMFile(String, boolean, OSMFilter), mais à l'aide
+     * de l'analyseur spécialisé, sur le pool de fils
+     * d'exécution commun
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param fileName
+     *      Le nom du fichier à lire
+     * @param unGZip
+     *      Valeur booléenne qui détermine si le fichier est
+     *      compressé, et doit donc être décompressé avant
+     *      d'être lu, ou pas
+     * @param filter
+     *      Le filtre qui détermine les chemins et les
+     *      relations à garder, ainsi que leurs attributs
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée,
+     *      ou si le fichier est mal formé
+     *
+     * @return scanOSMFile(fileName, unGZip, filter, ForkJoinPool.commonPool())
+     *      une version finale et immuable d'une OSMMap
+     *      ne contenant que les entités gardées
+     */
+    public static OSMMap scanOSMFile(String fileName, boolean unGZip, OSMFilter filter) throws IOException {
+        return scanOSMFile(fileName, unGZip, filter, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Méthode qui lit le fichier OSM ayant le nom passé en
+     * paramètre en plusieurs passes, à l'aide de l'analyseur
+     * spécialisé, en décodant ses morceaux en parallèle sur le
+     * pool donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param fileName
+     *      Le nom du fichier à lire
+     * @param unGZip
+     *      Valeur booléenne qui détermine si le fichier est
+     *      compressé, et doit donc être décompressé avant
+     *      d'être lu, ou pas
+     * @param filter
+     *      Le filtre qui détermine les chemins et les
+     *      relations à garder, ainsi que leurs attributs
+     * @param pool
+     *      Le pool sur lequel les morceaux sont décodés
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée,
+     *      ou si le fichier est mal formé
+     *
+     * @return map.build()
+     *      une version finale et immuable d'une OSMMap
+     *      ne contenant que les entités gardées
+     */
+    public static OSMMap scanOSMFile(String fileName, boolean unGZip, OSMFilter filter, ForkJoinPool pool) throws IOException {
+        OSMSelection.Builder selection = new OSMSelection.Builder(filter);
+        do {
+            scan(fileName, unGZip, selection, pool);
+        } while (selection.nextPass());
+        OSMMapAssembler map = new OSMMapAssembler(selection.build(), filter);
+        scan(fileName, unGZip, map, pool);
+        return map.build();
+    }
+
+    private static void parse(String fileName, boolean unGZip, OSMHandler handler) throws SAXException, IOException {
+        InputStream stream = open(fileName, unGZip);
         XMLReader reader = XMLReaderFactory.createXMLReader();
-        reader.setContentHandler(new DefaultHandler() {
-            private OSMNode.Builder node = null;
-            private OSMWay.Builder way = null;
-            private OSMRelation.Builder relation = null;
-
-            /**
-             * Méthode qui redéfinit la méthode startElement
-             * de la superclasse DefaultHandler et qui effectue
-             * les opérations nécessaires quand une balise ouvrante
-             * d'un élément est rencontrée
-             *
-             * @author Andrey Batasov (250149)
-             * @author Raja Soufi (247680)
-             *
-             * @param uri
-             * @param lName
-             * @param qName
-             *      le nom de l'élément ouvert
-             * @param atts
-             *      les attributs de l'élément ouvert
-             *
-             * @throws SAXException
-             *      si une erreur est rencontrée dans le format
-             *      du fichier XML contenant la carte
-             */
-            @Override
-            public void startElement(String uri, String lName, String qName, Attributes atts) throws SAXException {
-                switch (qName) {
-                    case NODE:
-                        double longitude = Math.toRadians(parseDouble(atts.getValue("lon")));
-                        double latitude = Math.toRadians(parseDouble(atts.getValue("lat")));
-                        node = new OSMNode.Builder(parseLong(atts.getValue(ID)), new PointGeo(longitude, latitude));
-                        break;
-                    case WAY:
-                        way = new OSMWay.Builder(parseLong(atts.getValue(ID)));
-                        break;
-                    case "nd":
-                        OSMNode nd = map.nodeForId(parseLong(atts.getValue(REF)));
-                        if (nd == null) {
-                            way.setIncomplete();
-                        } else {
-                            way.addNode(nd);
-                        }
-                        break;
-                    case RELATION:
-                        relation = new OSMRelation.Builder(parseLong(atts.getValue(ID)));
-                        break;
-                    case "member":
-                        switch (atts.getValue("type")) {
-                            case NODE:
-                                OSMNode n = map.nodeForId(parseLong(atts.getValue(REF)));
-                                if (n == null) {
-                                    relation.setIncomplete();
-                                } else {
-                                    relation.addMember(Type.NODE, atts.getValue(ROLE), n);
-                                }
-                                break;
-                            case WAY:
-                                OSMWay w = map.wayForId(parseLong(atts.getValue(REF)));
-                                if (w == null) {
-                                    relation.setIncomplete();
-                                } else {
-                                    relation.addMember(Type.WAY, atts.getValue(ROLE), w);
-                                }
-                                break;
-                            case RELATION:
-                                OSMRelation r = map.relationForId(parseLong(atts.getValue(REF)));
-                                if (r == null) {
-                                    relation.setIncomplete();
-                                } else {
-                                    relation.addMember(Type.RELATION, atts.getValue(ROLE), r);
-                                }
-                                break;
-                            default: break;
-                        }
-                        break;
-                    case "tag":
-                        if (way != null) {
-                            way.setAttribute(atts.getValue(K), atts.getValue(V));
-                        } else if (relation != null) {
-                            relation.setAttribute(atts.getValue(K), atts.getValue(V));
-                        }
-                        break;
-                    default: break;
-                }
-            }
+        reader.setContentHandler(new SAXHandler(handler));
+        reader.parse(new InputSource(stream));
+        stream.close();
+    }
 
-            /**
-             * Méthode qui redéfinit la méthode endElement
-             * de la superclasse DefaultHandler et qui effectue
-             * les opérations nécessaires quand une balise fermante
-             * d'un élément est rencontrée
-             *
-             * @author Andrey Batasov (250149)
-             * @author Raja Soufi (247680)
-             *
-             * @param uri
-             * @param lName
-             * @param qName
-             *      le nom de l'élément fermé
-             *
-             * @throws SAXException
-             *      si une erreur est rencontrée dans le format
-             *      du fichier XML contenant la carte
-             */
-            @Override
-            public void endElement(String uri, String lName, String qName) throws SAXException {
-                switch (qName) {
-                    case NODE:
-                        if (!node.isIncomplete()) {
-                            map.addNode(node.build());
-                        }
-                        node = null;
-                        break;
-                    case WAY:
-                        if (!way.isIncomplete()) {
-                            map.addWay(way.build());
-                        }
-                        way = null;
-                        break;
-                    case RELATION:
-                        if (!relation.isIncomplete()) {
-                            map.addRelation(relation.build());
-                        }
-                        relation = null;
-                        break;
-                    default: break;
+    private static void scan(String fileName, boolean unGZip, OSMHandler handler, ForkJoinPool pool) throws IOException {
+        if (pool.getParallelism() <= 1) {
+            try (InputStream stream = open(fileName, unGZip)) {
+                new OSMXMLScanner(stream, handler).scan();
+            }
+            return;
+        }
+        // Le fichier est découpé entre deux balises, les morceaux sont
+        // décodés en parallèle puis transmis dans l'ordre ; le nombre de
+        // morceaux en cours de décodage est borné pour limiter la mémoire
+        int maxPending = 2 * pool.getParallelism() + 1;
+        Deque<Future<OSMEventBuffer>> pending = new ArrayDeque<>();
+        try (InputStream stream = open(fileName, unGZip)) {
+            OSMXMLSplitter splitter = new OSMXMLSplitter(stream, CHUNK_SIZE);
+            byte[] chunk;
+            while ((chunk = splitter.next()) != null) {
+                byte[] bytes = chunk;
+                pending.addLast(pool.submit(() -> {
+                    OSMEventBuffer events = new OSMEventBuffer();
+                    new OSMXMLScanner(bytes, events).scan();
+                    return events;
+                }));
+                if (pending.size() >= maxPending) {
+                    OSMEventBuffer.join(pending.removeFirst()).replay(handler);
                 }
             }
-        });
-        reader.parse(new InputSource(stream));
-        stream.close();
-        return map.build();
+            while (!pending.isEmpty()) {
+                OSMEventBuffer.join(pending.removeFirst()).replay(handler);
+            }
+        } finally {
+            for (Future<OSMEventBuffer> task : pending) {
+                task.cancel(true);
+            }
+        }
     }
 
+    private static InputStream open(String fileName, boolean unGZip) throws IOException {
+        InputStream stream = OSMMapReader.class.getClassLoader().getResourceAsStream(fileName);
+        if (stream == null) {
+            throw new IOException("Cannot find file " + fileName);
+        }
+        return unGZip ? new GZIPInputStream(stream, 64 * 1024) : stream;
+    }
+
+    /**
+     * Classe qui traduit les événements SAX en appels
+     * aux méthodes d'un OSMHandler
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    private static final class SAXHandler extends DefaultHandler {
+        private final OSMHandler HANDLER;
+
+        private SAXHandler(OSMHandler handler) {
+            HANDLER = handler;
+        }
+
+        /**
+         * Méthode qui redéfinit la méthode startElement
+         * de la superclasse DefaultHandler et qui effectue
+         * les opérations nécessaires quand une balise ouvrante
+         * d'un élément est rencontrée
+         *
+         * @author Andrey Batasov (250149)
+         * @author Raja Soufi (247680)
+         *
+         * @param uri
+         * @param lName
+         * @param qName
+         *      le nom de l'élément ouvert
+         * @param atts
+         *      les attributs de l'élément ouvert
+         *
+         * @throws SAXException
+         *      si une erreur est rencontrée dans le format
+         *      du fichier XML contenant la carte
+         */
+        @Override
+        public void startElement(String uri, String lName, String qName, Attributes atts) throws SAXException {
+            switch (qName) {
+                case NODE:
+                    HANDLER.node(parseLong(atts.getValue(ID)), toFixed(parseDouble(atts.getValue("lon"))), toFixed(parseDouble(atts.getValue("lat"))));
+                    break;
+                case WAY:
+                    HANDLER.startWay(parseLong(atts.getValue(ID)));
+                    break;
+                case "nd":
+                    HANDLER.wayNode(parseLong(atts.getValue(REF)));
+                    break;
+                case RELATION:
+                    HANDLER.startRelation(parseLong(atts.getValue(ID)));
+                    break;
+                case "member":
+                    switch (atts.getValue("type")) {
+                        case NODE:
+                            HANDLER.member(Type.NODE, parseLong(atts.getValue(REF)), atts.getValue(ROLE));
+                            break;
+                        case WAY:
+                            HANDLER.member(Type.WAY, parseLong(atts.getValue(REF)), atts.getValue(ROLE));
+                            break;
+                        case RELATION:
+                            HANDLER.member(Type.RELATION, parseLong(atts.getValue(REF)), atts.getValue(ROLE));
+                            break;
+                        default: break;
+                    }
+                    break;
+                case "tag":
+                    HANDLER.tag(atts.getValue(K), atts.getValue(V));
+                    break;
+                default: break;
+            }
+        }
+
+        /**
+         * Méthode qui redéfinit la méthode endElement
+         * de la superclasse DefaultHandler et qui effectue
+         * les opérations nécessaires quand une balise fermante
+         * d'un élément est rencontrée
+         *
+         * @author Andrey Batasov (250149)
+         * @author Raja Soufi (247680)
+         *
+         * @param uri
+         * @param lName
+         * @param qName
+         *      le nom de l'élément fermé
+         *
+         * @throws SAXException
+         *      si une erreur est rencontrée dans le format
+         *      du fichier XML contenant la carte
+         */
+        @Override
+        public void endElement(String uri, String lName, String qName) throws SAXException {
+            switch (qName) {
+                case WAY:
+                    HANDLER.endWay();
+                    break;
+                case RELATION:
+                    HANDLER.endRelation();
+                    break;
+                default: break;
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -43,6 +43,41 @@ public final class OSMNode extends OSMEntity {
         return POSITION;
     }
     
+    /**
+     * Méthode qui redéfinit la méthode equals de Object :
+     * deux nœuds sont égaux s'ils ont le même identifiant
+     * (les nœuds stockés en colonnes étant reconstruits à
+     * chaque accès, l'identité des objets ne suffit plus)
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @param that
+     *      l'objet à comparer avec le nœud
+     * 
+     * @return (that instanceof OSMNode) && (((OSMNode)that).id() == id())
+     *      le résultat de la comparaison
+     */
+    @Override
+    public boolean equals(Object that) {
+        return (that instanceof OSMNode) && (((OSMNode)that).id() == id());
+    }
+    
+    /**
+     * Méthode qui redéfinit la méthode hashCode de Object,
+     * de manière cohérente avec equals
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @return Long.hashCode(id())
+     *      le code de hachage du nœud
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id());
+    }
+    
     /**
      * Bâtisseur de la classe OSMNode. Permet de construire
      * progressivement un noeud OSM
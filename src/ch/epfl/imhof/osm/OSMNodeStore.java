@@ -0,0 +1,362 @@
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+
+/**
+ * Classe représentant un stockage en colonnes des nœuds
+ * OpenStreetMap : les identifiants et les positions des
+ * nœuds sont stockés dans des tableaux parallèles d'entiers,
+ * les longitudes et latitudes étant exprimées en virgule fixe
+ * (en dix-millionièmes de degré, comme dans les fichiers OSM).
+ * Chaque nœud occupe ainsi 16 octets, et il est désigné par
+ * son indice dans le stockage. Les attributs des nœuds ne sont
+ * pas conservés.
+ *
+ * Les nœuds sont d'abord tous ajoutés, puis recherchés par
+ * identifiant : la première recherche termine l'ajout des nœuds.
+ * Si plusieurs nœuds ont le même identifiant, la recherche
+ * retourne le dernier ajouté
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+public final class OSMNodeStore {
+    /**
+     * Le nombre d'unités de la virgule fixe par degré
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public static final double UNITS_PER_DEGREE = 1e7;
+
+    private static final Attributes NO_ATTRIBUTES = new Attributes.Builder().build();
+    private long[] ids;
+    private int[] longitudes;
+    private int[] latitudes;
+    private int size;
+    // Vrai tant que les identifiants ont été ajoutés dans l'ordre
+    // strictement croissant (ils sont alors aussi tous différents)
+    private boolean isSorted;
+    private boolean isFinished;
+    // Les indices des nœuds triés par identifiant (un seul par
+    // identifiant), calculés à la fin de l'ajout si les identifiants
+    // n'ont pas été ajoutés dans l'ordre
+    private int[] order;
+
+    /**
+     * Construit un stockage de nœuds vide
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public OSMNodeStore() {
+        ids = new long[16];
+        longitudes = new int[16];
+        latitudes = new int[16];
+        size = 0;
+        isSorted = true;
+        isFinished = false;
+        order = null;
+    }
+
+    /**
+     * Méthode qui ajoute un nœud au stockage. Les nœuds ne
+     * sont ajoutés que pendant la lecture d'une carte ; si
+     * leurs identifiants arrivent dans l'ordre croissant (ce
+     * qui est le cas dans les fichiers OSM), la recherche par
+     * identifiant se fait directement par dichotomie
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param id
+     *      l'identifiant du nœud
+     * @param longitude
+     *      la longitude du nœud, en virgule fixe
+     * @param latitude
+     *      la latitude du nœud, en virgule fixe
+     *
+     * @throws IllegalStateException
+     *      si l'ajout des nœuds est déjà terminé
+     *
+     * @return size - 1
+     *      l'indice du nœud ajouté
+     */
+    int add(long id, int longitude, int latitude) {
+        if (isFinished) {
+            throw new IllegalStateException("Nodes cannot be added once the store has been searched.");
+        }
+        if (size == ids.length) {
+            int capacity = Math.max(16, 2 * size);
+            ids = Arrays.copyOf(ids, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+        }
+        if (isSorted && (size > 0) && (id <= ids[size - 1])) {
+            isSorted = false;
+        }
+        ids[size] = id;
+        longitudes[size] = longitude;
+        latitudes[size] = latitude;
+        return size++;
+    }
+
+    /**
+     * Méthode qui ajoute au stockage l'identifiant et la
+     * position du nœud donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param node
+     *      le nœud à ajouter
+     *
+     * @throws IllegalStateException
+     *      si l'ajout des nœuds est déjà terminé
+     *
+     * @return add(node.id(), toFixed(...), toFixed(...))
+     *      l'indice du nœud ajouté
+     */
+    int add(OSMNode node) {
+        PointGeo position = node.position();
+        return add(node.id(), toFixed(Math.toDegrees(position.longitude())), toFixed(Math.toDegrees(position.latitude())));
+    }
+
+    /**
+     * Méthode qui libère la mémoire inutilisée à la fin
+     * des tableaux du stockage
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    void trim() {
+        ids = Arrays.copyOf(ids, size);
+        longitudes = Arrays.copyOf(longitudes, size);
+        latitudes = Arrays.copyOf(latitudes, size);
+    }
+
+    /**
+     * Méthode qui termine l'ajout des nœuds : les identifiants
+     * sont triés une seule fois, s'ils n'ont pas été ajoutés
+     * dans l'ordre. Elle est appelée par la première recherche
+     * si elle ne l'a pas été avant
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    void finish() {
+        if (!isFinished) {
+            if (!isSorted) {
+                sortOrder();
+            }
+            isFinished = true;
+        }
+    }
+
+    /**
+     * Méthode qui retourne l'indice du nœud ayant l'identifiant
+     * donné (le dernier ajouté si plusieurs nœuds ont cet
+     * identifiant), ou -1 si le stockage ne contient pas ce nœud.
+     * L'ajout des nœuds est terminé s'il ne l'était pas encore
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param id
+     *      l'identifiant du nœud
+     *
+     * @return index
+     *      l'indice du nœud, ou -1
+     */
+    public int indexOf(long id) {
+        finish();
+        if (isSorted) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            return index < 0 ? -1 : index;
+        }
+        int low = 0;
+        int high = order.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = ids[order[middle]];
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return order[middle];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Getter du nombre de nœuds du stockage
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return size
+     *      le nombre de nœuds
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter de l'identifiant du nœud d'indice donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param index
+     *      l'indice du nœud
+     *
+     * @return ids[index]
+     *      l'identifiant du nœud
+     */
+    public long id(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Getter de la longitude, en virgule fixe, du nœud
+     * d'indice donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param index
+     *      l'indice du nœud
+     *
+     * @return longitudes[index]
+     *      la longitude du nœud, en dix-millionièmes de degré
+     */
+    public int fixedLongitude(int index) {
+        return longitudes[index];
+    }
+
+    /**
+     * Getter de la latitude, en virgule fixe, du nœud
+     * d'indice donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param index
+     *      l'indice du nœud
+     *
+     * @return latitudes[index]
+     *      la latitude du nœud, en dix-millionièmes de degré
+     */
+    public int fixedLatitude(int index) {
+        return latitudes[index];
+    }
+
+    /**
+     * Méthode qui retourne la position du nœud d'indice donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param index
+     *      l'indice du nœud
+     *
+     * @return new PointGeo(toRadians(longitude), toRadians(latitude))
+     *      la position du nœud
+     */
+    public PointGeo position(int index) {
+        return new PointGeo(toRadians(longitudes[index]), toRadians(latitudes[index]));
+    }
+
+    /**
+     * Méthode qui construit le nœud OSM d'indice donné (sans
+     * attributs)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param index
+     *      l'indice du nœud
+     *
+     * @return new OSMNode(id(index), position(index), NO_ATTRIBUTES)
+     *      le nœud construit
+     */
+    public OSMNode node(int index) {
+        return new OSMNode(ids[index], position(index), NO_ATTRIBUTES);
+    }
+
+    /**
+     * Méthode statique qui convertit un angle en degrés en
+     * un angle en virgule fixe
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param degrees
+     *      l'angle en degrés
+     *
+     * @return (int)Math.round(degrees * UNITS_PER_DEGREE)
+     *      l'angle en dix-millionièmes de degré
+     */
+    public static int toFixed(double degrees) {
+        return (int)Math.round(degrees * UNITS_PER_DEGREE);
+    }
+
+    /**
+     * Méthode statique qui convertit un angle en virgule
+     * fixe en un angle en radians
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param fixed
+     *      l'angle en dix-millionièmes de degré
+     *
+     * @return Math.toRadians(fixed / UNITS_PER_DEGREE)
+     *      l'angle en radians
+     */
+    public static double toRadians(int fixed) {
+        return Math.toRadians(fixed / UNITS_PER_DEGREE);
+    }
+
+    // Trie les indices des nœuds par identifiant, par un tri fusion
+    // (stable) sur des tableaux d'entiers ; les suites déjà dans
+    // l'ordre, fréquentes dans les fichiers OSM, sont simplement copiées.
+    // Seul le dernier ajouté des nœuds de même identifiant est gardé
+    private void sortOrder() {
+        int[] sorted = new int[size];
+        int[] buffer = new int[size];
+        for (int i = 0 ; i < size ; i++) {
+            sorted[i] = i;
+        }
+        for (int width = 1 ; width < size ; width *= 2) {
+            for (int from = 0 ; from < size ; from += 2 * width) {
+                int middle = Math.min(from + width, size);
+                int to = Math.min(from + 2 * width, size);
+                if ((middle == to) || (ids[sorted[middle - 1]] <= ids[sorted[middle]])) {
+                    System.arraycopy(sorted, from, buffer, from, to - from);
+                    continue;
+                }
+                int i = from;
+                int j = middle;
+                for (int k = from ; k < to ; k++) {
+                    buffer[k] = ((j == to) || ((i < middle) && (ids[sorted[i]] <= ids[sorted[j]]))) ? sorted[i++] : sorted[j++];
+                }
+            }
+            int[] swap = sorted;
+            sorted = buffer;
+            buffer = swap;
+        }
+        int count = 0;
+        for (int i = 0 ; i < size ; i++) {
+            if ((i == size - 1) || (ids[sorted[i]] != ids[sorted[i + 1]])) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        order = (count == size) ? sorted : Arrays.copyOf(sorted, count);
+    }
+}
@@ -0,0 +1,518 @@
+package ch.epfl.imhof.osm;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Classe représentant un lecteur de fichiers OSM au format
+ * PBF (Protocol Buffers). Un tel fichier est une suite de
+ * blocs compressés indépendants, chacun précédé de son en-tête,
+ * qui sont décodés en parallèle ; la lecture produit la même
+ * carte que celle du fichier XML équivalent
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+public final class OSMPBFReader {
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    private static final String HEADER_BLOCK = "OSMHeader";
+    private static final String DATA_BLOCK = "OSMData";
+    private static final Type[] MEMBER_TYPES = {Type.NODE, Type.WAY, Type.RELATION};
+
+    private OSMPBFReader() {}
+
+    /**
+     * Méthode qui lit le fichier OSM PBF ayant le nom passé
+     * en paramètre, en décodant ses blocs en parallèle sur
+     * le pool de fils d'exécution commun
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param fileName
+     *      Le nom du fichier à lire
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée, ou si
+     *      le fichier est mal formé ou utilise des fonctionnalités
+     *      non supportées
+     *
+     * @return readPBFFile(fileName, ForkJoinPool.commonPool())
+     *      une version finale et immuable d'une OSMMap
+     *      à partir de la OSMMap bâtie
+     */
+    public static OSMMap readPBFFile(String fileName) throws IOException {
+        return readPBFFile(fileName, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Méthode qui lit le fichier OSM PBF ayant le nom passé
+     * en paramètre, en décodant ses blocs en parallèle sur le
+     * pool donné. Les éléments décodés sont ajoutés à la carte
+     * dans l'ordre du fichier, de sorte que la carte obtenue
+     * ne dépend pas du nombre de fils d'exécution
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param fileName
+     *      Le nom du fichier à lire
+     * @param pool
+     *      Le pool sur lequel les blocs sont décodés
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée, ou si
+     *      le fichier est mal formé ou utilise des fonctionnalités
+     *      non supportées
+     *
+     * @return map.build()
+     *      une version finale et immuable d'une OSMMap
+     *      à partir de la OSMMap bâtie
+     */
+    public static OSMMap readPBFFile(String fileName, ForkJoinPool pool) throws IOException {
+        OSMMapAssembler map = new OSMMapAssembler();
+        parse(fileName, map, pool);
+        return map.build();
+    }
+
+    /**
+     * Méthode qui lit le fichier OSM PBF ayant le nom passé
+     * en paramètre en plusieurs passes, de la même manière que
+     * OSMMapReader.readOSMFile(String, boolean, OSMFilter),
+     * en décodant ses blocs en parallèle sur le pool de fils
+     * d'exécution commun
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param fileName
+     *      Le nom du fichier à lire
+     * @param filter
+     *      Le filtre qui détermine les chemins et les
+     *      relations à garder, ainsi que leurs attributs
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée, ou si
+     *      le fichier est mal formé ou utilise des fonctionnalités
+     *      non supportées
+     *
+     * @return readPBFFile(fileName, filter, ForkJoinPool.commonPool())
+     *      une version finale et immuable d'une OSMMap
+     *      ne contenant que les entités gardées
+     */
+    public static OSMMap readPBFFile(String fileName, OSMFilter filter) throws IOException {
+        return readPBFFile(fileName, filter, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Méthode qui lit le fichier OSM PBF ayant le nom passé
+     * en paramètre en plusieurs passes, en décodant ses blocs en
+     * parallèle sur le pool donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param fileName
+     *      Le nom du fichier à lire
+     * @param filter
+     *      Le filtre qui détermine les chemins et les
+     *      relations à garder, ainsi que leurs attributs
+     * @param pool
+     *      Le pool sur lequel les blocs sont décodés
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée, ou si
+     *      le fichier est mal formé ou utilise des fonctionnalités
+     *      non supportées
+     *
+     * @return map.build()
+     *      une version finale et immuable d'une OSMMap
+     *      ne contenant que les entités gardées
+     */
+    public static OSMMap readPBFFile(String fileName, OSMFilter filter, ForkJoinPool pool) throws IOException {
+        OSMSelection.Builder selection = new OSMSelection.Builder(filter);
+        do {
+            parse(fileName, selection, pool);
+        } while (selection.nextPass());
+        OSMMapAssembler map = new OSMMapAssembler(selection.build(), filter);
+        parse(fileName, map, pool);
+        return map.build();
+    }
+
+    private static void parse(String fileName, OSMHandler handler, ForkJoinPool pool) throws IOException {
+        InputStream resource = OSMPBFReader.class.getClassLoader().getResourceAsStream(fileName);
+        if (resource == null) {
+            throw new IOException("Cannot find file " + fileName);
+        }
+        // Les blocs sont lus dans l'ordre, décodés en parallèle puis
+        // transmis dans l'ordre ; le nombre de blocs en cours de
+        // décodage est borné pour limiter la mémoire utilisée
+        int maxPending = 2 * pool.getParallelism() + 1;
+        Deque<Future<OSMEventBuffer>> pending = new ArrayDeque<>();
+        try (DataInputStream stream = new DataInputStream(resource)) {
+            byte[] blob;
+            while ((blob = nextBlob(stream, DATA_BLOCK)) != null) {
+                byte[] data = blob;
+                pending.addLast(pool.submit(() -> {
+                    OSMEventBuffer events = new OSMEventBuffer();
+                    readPrimitiveBlock(data, events);
+                    return events;
+                }));
+                if (pending.size() >= maxPending) {
+                    OSMEventBuffer.join(pending.removeFirst()).replay(handler);
+                }
+            }
+            while (!pending.isEmpty()) {
+                OSMEventBuffer.join(pending.removeFirst()).replay(handler);
+            }
+        } finally {
+            for (Future<OSMEventBuffer> task : pending) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Méthode qui lit le prochain bloc du type donné dans le
+     * flot passé en paramètre, en vérifiant au passage les
+     * blocs d'en-tête rencontrés
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param stream
+     *      le flot à lire
+     * @param type
+     *      le type des blocs dont on veut le contenu
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée
+     *
+     * @return blob
+     *      le bloc encodé (encore compressé), ou null à la
+     *      fin du flot
+     */
+    static byte[] nextBlob(DataInputStream stream, String type) throws IOException {
+        while (true) {
+            int headerSize;
+            try {
+                headerSize = stream.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if ((headerSize < 0) || (headerSize > MAX_HEADER_SIZE)) {
+                throw new IOException("Invalid blob header size: " + headerSize);
+            }
+            byte[] header = new byte[headerSize];
+            stream.readFully(header);
+            String blobType = null;
+            int blobSize = 0;
+            PBFBuffer buffer = new PBFBuffer(header);
+            while (buffer.next()) {
+                switch (buffer.field()) {
+                    case 1: blobType = buffer.readString(); break;
+                    case 3: blobSize = (int)buffer.readVarint(); break;
+                    default: buffer.skip(); break;
+                }
+            }
+            if ((blobSize < 0) || (blobSize > MAX_BLOB_SIZE)) {
+                throw new IOException("Invalid blob size: " + blobSize);
+            }
+            byte[] blob = new byte[blobSize];
+            stream.readFully(blob);
+            if (HEADER_BLOCK.equals(blobType)) {
+                checkHeaderBlock(new PBFBuffer(uncompress(blob)));
+            } else if (type.equals(blobType)) {
+                return blob;
+            }
+        }
+    }
+
+    /**
+     * Méthode qui retourne le contenu décompressé d'un bloc
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param blob
+     *      le bloc encodé
+     *
+     * @throws IOException
+     *      si le bloc est mal formé ou utilise une compression
+     *      non supportée
+     *
+     * @return data
+     *      le contenu du bloc
+     */
+    static byte[] uncompress(byte[] blob) throws IOException {
+        byte[] raw = null;
+        byte[] zlib = null;
+        int rawSize = 0;
+        PBFBuffer buffer = new PBFBuffer(blob);
+        while (buffer.next()) {
+            switch (buffer.field()) {
+                case 1: raw = buffer.readBytes(); break;
+                case 2: rawSize = (int)buffer.readVarint(); break;
+                case 3: zlib = buffer.readBytes(); break;
+                case 4: case 5: case 6: case 7:
+                    throw new IOException("Unsupported blob compression (only raw and zlib blobs are supported).");
+                default: buffer.skip(); break;
+            }
+        }
+        if (raw != null) {
+            return raw;
+        }
+        if (zlib == null) {
+            throw new IOException("Empty blob.");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+            byte[] data = new byte[rawSize];
+            int length = 0;
+            while (length < rawSize) {
+                int inflated = inflater.inflate(data, length, rawSize - length);
+                if ((inflated == 0) && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawSize) {
+                throw new IOException("Corrupted zlib blob.");
+            }
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted zlib blob.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void checkHeaderBlock(PBFBuffer buffer) throws IOException {
+        while (buffer.next()) {
+            if (buffer.field() == 4) {
+                String feature = buffer.readString();
+                if (!feature.equals("OsmSchema-V0.6") && !feature.equals("DenseNodes")) {
+                    throw new IOException("Unsupported PBF feature: " + feature);
+                }
+            } else {
+                buffer.skip();
+            }
+        }
+    }
+
+    /**
+     * Méthode qui décode un bloc de primitives (nœuds, chemins
+     * et relations) et transmet ses éléments au récepteur
+     * passé en paramètre
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param blob
+     *      le bloc encodé (compressé)
+     * @param handler
+     *      le récepteur des éléments
+     *
+     * @throws IOException
+     *      si le bloc est mal formé
+     */
+    static void readPrimitiveBlock(byte[] blob, OSMHandler handler) throws IOException {
+        byte[] data = uncompress(blob);
+        PBFBuffer block = new PBFBuffer(data);
+        String[] strings = new String[0];
+        int granularity = 100;
+        long latOffset = 0;
+        long lonOffset = 0;
+        while (block.next()) {
+            switch (block.field()) {
+                case 1: strings = readStringTable(block.readMessage()); break;
+                case 17: granularity = (int)block.readVarint(); break;
+                case 19: latOffset = block.readVarint(); break;
+                case 20: lonOffset = block.readVarint(); break;
+                default: block.skip(); break;
+            }
+        }
+        block = new PBFBuffer(data);
+        while (block.next()) {
+            if (block.field() == 2) {
+                PBFBuffer group = block.readMessage();
+                while (group.next()) {
+                    switch (group.field()) {
+                        case 1: readNode(group.readMessage(), granularity, latOffset, lonOffset, handler); break;
+                        case 2: readDenseNodes(group.readMessage(), granularity, latOffset, lonOffset, handler); break;
+                        case 3: readWay(group.readMessage(), strings, handler); break;
+                        case 4: readRelation(group.readMessage(), strings, handler); break;
+                        default: group.skip(); break;
+                    }
+                }
+            } else {
+                block.skip();
+            }
+        }
+    }
+
+    private static String[] readStringTable(PBFBuffer table) throws IOException {
+        List<String> strings = new ArrayList<>();
+        while (table.next()) {
+            strings.add(table.readString());
+        }
+        return strings.toArray(new String[strings.size()]);
+    }
+
+    private static void readNode(PBFBuffer node, int granularity, long latOffset, long lonOffset, OSMHandler handler) throws IOException {
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        while (node.next()) {
+            switch (node.field()) {
+                case 1: id = node.readSignedVarint(); break;
+                case 8: lat = node.readSignedVarint(); break;
+                case 9: lon = node.readSignedVarint(); break;
+                default: node.skip(); break;
+            }
+        }
+        handler.node(id, toFixed(lonOffset + granularity * lon), toFixed(latOffset + granularity * lat));
+    }
+
+    private static void readDenseNodes(PBFBuffer dense, int granularity, long latOffset, long lonOffset, OSMHandler handler) throws IOException {
+        PBFBuffer ids = null;
+        PBFBuffer lats = null;
+        PBFBuffer lons = null;
+        while (dense.next()) {
+            switch (dense.field()) {
+                case 1: ids = dense.readMessage(); break;
+                case 8: lats = dense.readMessage(); break;
+                case 9: lons = dense.readMessage(); break;
+                default: dense.skip(); break;
+            }
+        }
+        if ((ids == null) || (lats == null) || (lons == null)) {
+            return;
+        }
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        while (ids.hasRemaining()) {
+            id += ids.readSignedVarint();
+            lat += lats.readSignedVarint();
+            lon += lons.readSignedVarint();
+            handler.node(id, toFixed(lonOffset + granularity * lon), toFixed(latOffset + granularity * lat));
+        }
+    }
+
+    private static void readWay(PBFBuffer way, String[] strings, OSMHandler handler) throws IOException {
+        long id = 0;
+        LongList keys = new LongList();
+        LongList values = new LongList();
+        PBFBuffer refs = null;
+        while (way.next()) {
+            switch (way.field()) {
+                case 1: id = way.readVarint(); break;
+                case 2: readUnsigned(way.readPacked(), keys); break;
+                case 3: readUnsigned(way.readPacked(), values); break;
+                case 8: refs = way.readPacked(); break;
+                default: way.skip(); break;
+            }
+        }
+        checkTags(keys, values, strings);
+        handler.startWay(id);
+        long ref = 0;
+        while ((refs != null) && refs.hasRemaining()) {
+            ref += refs.readSignedVarint();
+            handler.wayNode(ref);
+        }
+        readTags(keys, values, strings, handler);
+        handler.endWay();
+    }
+
+    private static void readRelation(PBFBuffer relation, String[] strings, OSMHandler handler) throws IOException {
+        long id = 0;
+        LongList keys = new LongList();
+        LongList values = new LongList();
+        LongList roles = new LongList();
+        LongList types = new LongList();
+        PBFBuffer memberIds = null;
+        while (relation.next()) {
+            switch (relation.field()) {
+                case 1: id = relation.readVarint(); break;
+                case 2: readUnsigned(relation.readPacked(), keys); break;
+                case 3: readUnsigned(relation.readPacked(), values); break;
+                case 8: readUnsigned(relation.readPacked(), roles); break;
+                case 9: memberIds = relation.readPacked(); break;
+                case 10: readUnsigned(relation.readPacked(), types); break;
+                default: relation.skip(); break;
+            }
+        }
+        LongList refs = new LongList();
+        long ref = 0;
+        while ((memberIds != null) && memberIds.hasRemaining()) {
+            ref += memberIds.readSignedVarint();
+            refs.add(ref);
+        }
+        // Les tableaux parallèles sont vérifiés avant de transmettre la relation
+        if ((roles.size() != refs.size()) || (types.size() != refs.size())) {
+            throw new IOException("Malformed PBF relation: " + refs.size() + " members, " + roles.size() + " roles and " + types.size() + " types.");
+        }
+        checkTags(keys, values, strings);
+        for (int i = 0 ; i < roles.size() ; i++) {
+            checkString(strings, roles.get(i));
+        }
+        handler.startRelation(id);
+        for (int i = 0 ; i < refs.size() ; i++) {
+            long type = types.get(i);
+            if ((type >= 0) && (type < MEMBER_TYPES.length)) {
+                handler.member(MEMBER_TYPES[(int)type], refs.get(i), strings[(int)roles.get(i)]);
+            }
+        }
+        readTags(keys, values, strings, handler);
+        handler.endRelation();
+    }
+
+    private static void readUnsigned(PBFBuffer packed, LongList list) throws IOException {
+        while (packed.hasRemaining()) {
+            list.add(packed.readVarint());
+        }
+    }
+
+    // Vérifie que les clefs et les valeurs des attributs vont par
+    // paires et désignent des chaînes de la table
+    private static void checkTags(LongList keys, LongList values, String[] strings) throws IOException {
+        if (keys.size() != values.size()) {
+            throw new IOException("Malformed PBF block: " + keys.size() + " keys and " + values.size() + " values.");
+        }
+        for (int i = 0 ; i < keys.size() ; i++) {
+            checkString(strings, keys.get(i));
+            checkString(strings, values.get(i));
+        }
+    }
+
+    private static void checkString(String[] strings, long index) throws IOException {
+        if ((index < 0) || (index >= strings.length)) {
+            throw new IOException("Malformed PBF block: string index " + index + " outside a table of " + strings.length + " strings.");
+        }
+    }
+
+    private static void readTags(LongList keys, LongList values, String[] strings, OSMHandler handler) {
+        for (int i = 0 ; i < keys.size() ; i++) {
+            handler.tag(strings[(int)keys.get(i)], strings[(int)values.get(i)]);
+        }
+    }
+
+    private static int toFixed(long nanodegrees) {
+        return (int)Math.floorDiv(nanodegrees + 50, 100);
+    }
+}
@@ -0,0 +1,396 @@
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+
+/**
+ * Classe représentant l'ensemble des identifiants des
+ * entités OSM qui doivent être lues lors de la dernière
+ * passe de lecture d'un fichier OSM
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class OSMSelection {
+    private final LongSet NODES;
+    private final LongSet WAYS;
+    private final LongSet RELATIONS;
+
+    private OSMSelection(LongSet nodes, LongSet ways, LongSet relations) {
+        NODES = nodes;
+        WAYS = ways;
+        RELATIONS = relations;
+    }
+
+    /**
+     * Méthode qui teste si le nœud ayant l'identifiant
+     * passé en paramètre doit être lu
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param id
+     *      l'identifiant du nœud
+     *
+     * @return NODES.contains(id)
+     *      le résultat du test
+     */
+    public boolean containsNode(long id) {
+        return NODES.contains(id);
+    }
+
+    /**
+     * Méthode qui teste si le chemin ayant l'identifiant
+     * passé en paramètre doit être lu
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param id
+     *      l'identifiant du chemin
+     *
+     * @return WAYS.contains(id)
+     *      le résultat du test
+     */
+    public boolean containsWay(long id) {
+        return WAYS.contains(id);
+    }
+
+    /**
+     * Méthode qui teste si la relation ayant l'identifiant
+     * passé en paramètre doit être lue
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param id
+     *      l'identifiant de la relation
+     *
+     * @return RELATIONS.contains(id)
+     *      le résultat du test
+     */
+    public boolean containsRelation(long id) {
+        return RELATIONS.contains(id);
+    }
+
+    /**
+     * Bâtisseur de la classe OSMSelection, qui reçoit les
+     * éléments lus lors des premières passes. Les relations sont
+     * lues en premier : seuls les membres des relations
+     * intéressantes (selon le filtre) et, récursivement, des
+     * relations dont elles sont composées sont mémorisés ; une
+     * nouvelle passe n'est nécessaire que si l'une de ces
+     * dernières précède dans le fichier la relation qui la
+     * contient. Les nœuds et les chemins sont lus ensuite : les
+     * chemins intéressants sont gardés avec tous leurs nœuds, et
+     * les références des autres chemins ne sont conservées que si
+     * une relation mémorisée les contient. Si le filtre est
+     * restreint à une zone, les positions des nœuds sont
+     * mémorisées, et seuls les chemins et les relations dont la
+     * boîte englobante touche la zone sont gardés. La mémoire
+     * nécessaire ne dépend ainsi, en plus des nœuds, que des
+     * entités qui peuvent être gardées
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public static final class Builder implements OSMHandler {
+        private final OSMFilter FILTER;
+        private final LongSet NODES;
+        private final LongSet WAYS;
+        // Les positions des nœuds, si le filtre est restreint à une zone
+        private final OSMNodeStore POSITIONS;
+        // Les côtés de la zone (voir OSMFilter.boundingBoxSides) au-delà
+        // desquels se trouvent tous les nœuds des chemins membres d'une
+        // relation mémorisée
+        private final LongMap<Integer> WAY_SIDES;
+        private final LongSet REFERENCED_WAYS;
+        private final LongMap<long[]> OTHER_WAYS;
+        private final LongMap<Members> RELATIONS;
+        private final LongSet WANTED_RELATIONS;
+        private final LongList RELATIONS_OF_INTEREST;
+        private final LongList REFS;
+        private final LongList NODE_MEMBERS;
+        private final LongList WAY_MEMBERS;
+        private final LongList RELATION_MEMBERS;
+        // Les relations ignorées lors de la passe courante
+        private LongSet skippedRelations;
+        private boolean readsRelations;
+        private boolean readsNodes;
+        private boolean isMissingRelations;
+        private boolean isComplete;
+        private long id;
+        private boolean isOfInterest;
+
+        /**
+         * Construit un bâtisseur de sélection utilisant le
+         * filtre passé en paramètre
+         *
+         * @author Raja Soufi (247680)
+         * @author Andrey Batasov (250149)
+         *
+         * @param filter
+         *      le filtre qui détermine les chemins et les
+         *      relations intéressants
+         */
+        public Builder(OSMFilter filter) {
+            FILTER = filter;
+            NODES = new LongSet();
+            WAYS = new LongSet();
+            POSITIONS = new OSMNodeStore();
+            WAY_SIDES = new LongMap<Integer>();
+            REFERENCED_WAYS = new LongSet();
+            OTHER_WAYS = new LongMap<long[]>();
+            RELATIONS = new LongMap<Members>();
+            WANTED_RELATIONS = new LongSet();
+            RELATIONS_OF_INTEREST = new LongList();
+            REFS = new LongList();
+            NODE_MEMBERS = new LongList();
+            WAY_MEMBERS = new LongList();
+            RELATION_MEMBERS = new LongList();
+            skippedRelations = new LongSet();
+            readsRelations = true;
+            readsNodes = true;
+            isMissingRelations = false;
+            isComplete = false;
+        }
+
+        /**
+         * Méthode à appeler à la fin de chaque passe de lecture
+         * du fichier, qui indique si une nouvelle passe est
+         * nécessaire avant de pouvoir construire la sélection
+         *
+         * @author Raja Soufi (247680)
+         * @author Andrey Batasov (250149)
+         *
+         * @throws IllegalStateException
+         *      si la sélection est déjà complète
+         *
+         * @return !isComplete
+         *      vrai si le fichier doit être lu une nouvelle fois
+         */
+        public boolean nextPass() {
+            if (isComplete) {
+                throw new IllegalStateException("The selection is already complete.");
+            }
+            if (!readsRelations) {
+                isComplete = true;
+            } else if (isMissingRelations) {
+                skippedRelations = new LongSet();
+                isMissingRelations = false;
+            } else {
+                skippedRelations = null;
+                readsRelations = false;
+            }
+            return !isComplete;
+        }
+
+        @Override
+        public void node(long id, int longitude, int latitude) {
+            if (!readsRelations && readsNodes && FILTER.hasBoundingBox()) {
+                POSITIONS.add(id, longitude, latitude);
+            }
+        }
+
+        @Override
+        public void startWay(long id) {
+            endNodes();
+            this.id = id;
+            isOfInterest = FILTER.keepsAllKeys();
+            REFS.clear();
+        }
+
+        @Override
+        public void wayNode(long ref) {
+            if (!readsRelations) {
+                REFS.add(ref);
+            }
+        }
+
+        @Override
+        public void endWay() {
+            if (readsRelations) {
+                return;
+            }
+            boolean isReferenced = REFERENCED_WAYS.contains(id);
+            if (!isOfInterest && !isReferenced) {
+                return;
+            }
+            int sides = 0;
+            if (FILTER.hasBoundingBox()) {
+                sides = -1;
+                for (int i = 0 ; (sides != 0) && (i < REFS.size()) ; i++) {
+                    sides &= sidesOf(REFS.get(i));
+                }
+                if (isReferenced) {
+                    WAY_SIDES.put(id, sides);
+                }
+            }
+            boolean isInside = (sides == 0);
+            if (isOfInterest && isInside) {
+                WAYS.add(id);
+                for (int i = 0 ; i < REFS.size() ; i++) {
+                    NODES.add(REFS.get(i));
+                }
+            } else if (isReferenced) {
+                OTHER_WAYS.put(id, REFS.toArray());
+            }
+        }
+
+        @Override
+        public void startRelation(long id) {
+            endNodes();
+            this.id = id;
+            isOfInterest = FILTER.keepsAllKeys();
+            NODE_MEMBERS.clear();
+            WAY_MEMBERS.clear();
+            RELATION_MEMBERS.clear();
+        }
+
+        @Override
+        public void member(Type type, long ref, String role) {
+            if (!readsRelations) {
+                return;
+            }
+            switch (type) {
+                case NODE: NODE_MEMBERS.add(ref); break;
+                case WAY: WAY_MEMBERS.add(ref); break;
+                case RELATION: RELATION_MEMBERS.add(ref); break;
+                default: break;
+            }
+        }
+
+        @Override
+        public void endRelation() {
+            if (!readsRelations || RELATIONS.containsKey(id)) {
+                return;
+            }
+            if (!isOfInterest && !WANTED_RELATIONS.contains(id)) {
+                skippedRelations.add(id);
+                return;
+            }
+            Members members = new Members(NODE_MEMBERS.toArray(), WAY_MEMBERS.toArray(), RELATION_MEMBERS.toArray());
+            RELATIONS.put(id, members);
+            if (isOfInterest) {
+                RELATIONS_OF_INTEREST.add(id);
+            }
+            REFERENCED_WAYS.addAll(members.WAYS);
+            for (long r : members.RELATIONS) {
+                // Une relation déjà ignorée ne sera lue qu'à la prochaine passe
+                if (!RELATIONS.containsKey(r) && WANTED_RELATIONS.add(r) && skippedRelations.contains(r)) {
+                    isMissingRelations = true;
+                }
+            }
+        }
+
+        @Override
+        public void tag(String key, String value) {
+            if (FILTER.isOfInterest(key)) {
+                isOfInterest = true;
+            }
+        }
+
+        /**
+         * Méthode qui construit la sélection à partir des
+         * éléments reçus, en y ajoutant récursivement les
+         * membres des relations intéressantes
+         *
+         * @author Raja Soufi (247680)
+         * @author Andrey Batasov (250149)
+         *
+         * @throws IllegalStateException
+         *      si nextPass n'a pas encore indiqué que la
+         *      sélection est complète
+         *
+         * @return new OSMSelection(NODES, WAYS, relations)
+         *      la sélection construite
+         */
+        public OSMSelection build() {
+            if (!isComplete) {
+                throw new IllegalStateException("The file has not been completely read yet.");
+            }
+            LongSet relations = new LongSet();
+            LongList toVisit = new LongList();
+            for (int i = 0 ; i < RELATIONS_OF_INTEREST.size() ; i++) {
+                long relation = RELATIONS_OF_INTEREST.get(i);
+                if (!FILTER.hasBoundingBox() || isInside(relation)) {
+                    toVisit.add(relation);
+                }
+            }
+            for (int i = 0 ; i < toVisit.size() ; i++) {
+                long relation = toVisit.get(i);
+                Members members = RELATIONS.get(relation);
+                if (relations.add(relation) && (members != null)) {
+                    NODES.addAll(members.NODES);
+                    for (long w : members.WAYS) {
+                        long[] refs = OTHER_WAYS.get(w);
+                        if (WAYS.add(w) && (refs != null)) {
+                            NODES.addAll(refs);
+                        }
+                    }
+                    for (long r : members.RELATIONS) {
+                        toVisit.add(r);
+                    }
+                }
+            }
+            return new OSMSelection(NODES, WAYS, relations);
+        }
+
+        // Termine l'ajout des positions des nœuds, qui précèdent
+        // les chemins et les relations dans les fichiers OSM
+        private void endNodes() {
+            if (!readsRelations && readsNodes) {
+                readsNodes = false;
+                POSITIONS.finish();
+            }
+        }
+
+        // Les côtés de la zone au-delà desquels se trouve le nœud donné,
+        // ou tous les côtés (-1) s'il n'est pas dans le fichier
+        private int sidesOf(long node) {
+            int index = POSITIONS.indexOf(node);
+            return (index < 0) ? -1 : FILTER.boundingBoxSides(POSITIONS.fixedLongitude(index), POSITIONS.fixedLatitude(index));
+        }
+
+        // Teste si la boîte englobante des membres (récursivement) de
+        // la relation donnée touche la zone
+        private boolean isInside(long relation) {
+            LongSet visited = new LongSet();
+            LongList toVisit = new LongList();
+            toVisit.add(relation);
+            int sides = -1;
+            for (int i = 0 ; i < toVisit.size() ; i++) {
+                Members members = RELATIONS.get(toVisit.get(i));
+                if (visited.add(toVisit.get(i)) && (members != null)) {
+                    for (long n : members.NODES) {
+                        sides &= sidesOf(n);
+                    }
+                    for (long w : members.WAYS) {
+                        Integer waySides = WAY_SIDES.get(w);
+                        if (waySides != null) {
+                            sides &= waySides;
+                        }
+                    }
+                    if (sides == 0) {
+                        return true;
+                    }
+                    for (long r : members.RELATIONS) {
+                        toVisit.add(r);
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static final class Members {
+            private final long[] NODES;
+            private final long[] WAYS;
+            private final long[] RELATIONS;
+
+            private Members(long[] nodes, long[] ways, long[] relations) {
+                NODES = nodes;
+                WAYS = ways;
+                RELATIONS = relations;
+            }
+        }
+    }
+}
@@ -1,22 +1,23 @@
 package ch.epfl.imhof.osm;
 
 import java.util.Collections;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.ListIterator;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ch.epfl.imhof.Attributes;
 import ch.epfl.imhof.Attributed;
 import ch.epfl.imhof.Map;
-import ch.epfl.imhof.Graph;
 import ch.epfl.imhof.osm.OSMRelation.Member;
 import ch.epfl.imhof.osm.OSMRelation.Member.Type;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
 import ch.epfl.imhof.geometry.Polygon;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.projection.Projection;
@@ -32,13 +33,10 @@ import ch.epfl.imhof.projection.Projection;
  */
 public final class OSMToGeoTransformer {
     private final Projection PROJECTION;
-    private static final Set<String> AREA_VALUES = new HashSet<String>(Arrays.asList("yes", "1", "true"));
-    private static final Set<String> AREA_KEYS = new HashSet<String>(Arrays.asList("aeroway", "amenity", "building", "harbour", "historic",
-            "landuse", "leisure", "man_made", "military", "natural",
-            "office", "place", "power", "public_transport", "shop",
-            "sport", "tourism", "water", "waterway", "wetland"));
-    private static final Set<String> POLYLINE_KEYS = new HashSet<String>(Arrays.asList("bridge", "highway", "layer", "man_made", "railway", "tunnel", "waterway"));
-    private static final Set<String> POLYGON_KEYS = new HashSet<String>(Arrays.asList("building", "landuse", "layer", "leisure", "natural", "waterway"));
+    private final AtomicInteger UNCLOSABLE_RINGS;
+    // Taille des tranches de la transformation parallèle (les relations sont plus coûteuses)
+    private static final int WAYS_PER_TASK = 2048;
+    private static final int RELATIONS_PER_TASK = 16;
 
     /**
      * Construit un transformateur avec la projection
@@ -53,6 +51,78 @@ public final class OSMToGeoTransformer {
      */
     public OSMToGeoTransformer(Projection projection) {
         PROJECTION = projection;
+        UNCLOSABLE_RINGS = new AtomicInteger();
+    }
+
+    /**
+     * Méthode qui retourne le nombre d'anneaux de relations
+     * qui n'ont pas pu être fermés, et qui ont donc été ignorés,
+     * depuis la construction du transformateur
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return UNCLOSABLE_RINGS.get()
+     *      le nombre d'anneaux ignorés
+     */
+    public int unclosableRings() {
+        return UNCLOSABLE_RINGS.get();
+    }
+
+    /**
+     * Méthode statique qui retourne le filtre de lecture
+     * correspondant aux entités que le transformateur est
+     * susceptible de garder, c-à-d les chemins et les
+     * relations possédant au moins un attribut dont la clef
+     * fait partie des clefs des polylignes, des polygones
+     * ou des surfaces
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return new OSMFilter(keys)
+     *      le filtre de lecture du transformateur
+     */
+    public static OSMFilter filter() {
+        Set<String> keys = new HashSet<String>(OSMKeys.POLYLINE_KEYS);
+        keys.addAll(OSMKeys.POLYGON_KEYS);
+        keys.addAll(OSMKeys.AREA_KEYS);
+        return new OSMFilter(keys);
+    }
+
+    /**
+     * Méthode statique qui retourne l'ensemble des clefs
+     * d'attributs dont le transformateur a besoin pour
+     * construire une carte qui sera dessinée par un peintre
+     * n'ayant besoin que des clefs passées en paramètre (voir
+     * Painter.attributeKeys()). Les autres attributs peuvent
+     * être ignorés lors de la lecture sans changer le dessin :
+     * une entité ne perd ainsi tous ses attributs que si le
+     * peintre ne l'aurait de toute façon pas dessinée
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param painterKeys
+     *      l'ensemble des clefs dont le peintre a besoin, ou
+     *      null s'il n'est pas connu
+     *
+     * @return keys
+     *      l'ensemble des clefs nécessaires
+     */
+    public static Set<String> attributeKeys(Set<String> painterKeys) {
+        // Les clefs qui déterminent si un chemin fermé est
+        // une surface, ou si une relation est un multipolygone
+        Set<String> keys = new HashSet<String>(OSMKeys.AREA_KEYS);
+        keys.add("area");
+        keys.add("type");
+        Set<String> transformedKeys = new HashSet<String>(OSMKeys.POLYLINE_KEYS);
+        transformedKeys.addAll(OSMKeys.POLYGON_KEYS);
+        if (painterKeys != null) {
+            transformedKeys.retainAll(painterKeys);
+        }
+        keys.addAll(transformedKeys);
+        return keys;
     }
 
     /**
@@ -73,83 +143,206 @@ public final class OSMToGeoTransformer {
     public Map transform(OSMMap map) {
         Map.Builder incompleteMap = new Map.Builder();
         for (OSMWay way : map.ways()) {
-            PolyLine.Builder polyLine = new PolyLine.Builder();
-            for (OSMNode node : way.nonRepeatingNodes()) {
-                polyLine.addPoint(nodeToPoint(node));
-            }
-            if (way.isClosed() && validArea(way)) {
-                Attributes a = way.attributes().keepOnlyKeys(POLYGON_KEYS);
-                if (!a.isEmpty()) {
-                    incompleteMap.addPolygon(new Attributed<Polygon>(new Polygon(polyLine.buildClosed()), a));
+            transformWay(way, incompleteMap);
+        }
+        for (OSMRelation relation : map.relations()) {
+            transformRelation(relation, incompleteMap);
+        }
+        Map finalMap = incompleteMap.build();
+        return finalMap;
+    }
+
+    /**
+     * Méthode qui transforme une carte OpenStreetMap de la même
+     * manière que transform(OSMMap), mais en parallèle sur le pool
+     * passé en paramètre : les chemins et les relations sont répartis
+     * en tranches transformées indépendamment, puis les fragments
+     * de carte obtenus sont mis bout à bout dans l'ordre des tranches.
+     * La carte obtenue est donc identique, éléments et ordre compris,
+     * à celle que retourne transform(OSMMap)
+     * 
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @param map
+     *      la carte OpenStreetMap à transformer
+     * @param pool
+     *      le pool sur lequel les tranches sont transformées
+     * 
+     * @return incompleteMap.build()
+     *      une version finale et immuable d'une carte à
+     *      partir des fragments bâtis
+     */
+    public Map transform(OSMMap map, ForkJoinPool pool) {
+        List<ForkJoinTask<Map>> fragments = new ArrayList<ForkJoinTask<Map>>();
+        List<OSMWay> ways = map.ways();
+        for (int start = 0 ; start < ways.size() ; start += WAYS_PER_TASK) {
+            List<OSMWay> slice = ways.subList(start, Math.min(start + WAYS_PER_TASK, ways.size()));
+            fragments.add(pool.submit(() -> {
+                Map.Builder fragment = new Map.Builder();
+                for (OSMWay way : slice) {
+                    transformWay(way, fragment);
                 }
-            } else {
-                Attributes a = way.attributes().keepOnlyKeys(POLYLINE_KEYS);
-                if (!a.isEmpty()) {
-                    PolyLine p;
-                    if (way.isClosed()) {
-                        p = polyLine.buildClosed();
-                    } else {
-                        p = polyLine.buildOpen();
-                    }
-                    incompleteMap.addPolyLine(new Attributed<PolyLine>(p, a));
+                return fragment.build();
+            }));
+        }
+        List<OSMRelation> relations = map.relations();
+        for (int start = 0 ; start < relations.size() ; start += RELATIONS_PER_TASK) {
+            List<OSMRelation> slice = relations.subList(start, Math.min(start + RELATIONS_PER_TASK, relations.size()));
+            fragments.add(pool.submit(() -> {
+                Map.Builder fragment = new Map.Builder();
+                for (OSMRelation relation : slice) {
+                    transformRelation(relation, fragment);
                 }
+                return fragment.build();
+            }));
+        }
+        Map.Builder incompleteMap = new Map.Builder();
+        for (ForkJoinTask<Map> fragment : fragments) {
+            Map m = fragment.join();
+            for (Attributed<PolyLine> polyLine : m.polyLines()) {
+                incompleteMap.addPolyLine(polyLine);
+            }
+            for (Attributed<Polygon> polygon : m.polygons()) {
+                incompleteMap.addPolygon(polygon);
             }
         }
-        for (OSMRelation relation : map.relations()) {
-            if (relation.attributes().contains("type") && relation.attributes().get("type").equals("multipolygon")) {
-                Attributes a = relation.attributes().keepOnlyKeys(POLYGON_KEYS);
-                if (!a.isEmpty()) {
-                    List<Attributed<Polygon>> attributedPolygons = assemblePolygon(relation, a);
-                    for (Attributed<Polygon> p : attributedPolygons) {
-                        incompleteMap.addPolygon(p);
-                    }
+        return incompleteMap.build();
+    }
+
+    private void transformWay(OSMWay way, Map.Builder incompleteMap) {
+        // La classification du chemin évite de filtrer les attributs
+        // lorsque le résultat serait de toute façon vide
+        if (way.isClosed() && way.isArea()) {
+            if (way.hasPolygonKey()) {
+                Attributes a = way.attributes().keepOnlyKeys(OSMKeys.POLYGON_KEYS);
+                incompleteMap.addPolygon(new Attributed<Polygon>(new Polygon(new ClosedPolyLine(projectedNodes(way), 2 * way.nonRepeatingNodesCount())), a));
+            }
+        } else {
+            if (way.hasPolyLineKey()) {
+                Attributes a = way.attributes().keepOnlyKeys(OSMKeys.POLYLINE_KEYS);
+                PolyLine p;
+                if (way.isClosed()) {
+                    p = new ClosedPolyLine(projectedNodes(way), 2 * way.nonRepeatingNodesCount());
+                } else {
+                    p = new OpenPolyLine(projectedNodes(way));
+                }
+                incompleteMap.addPolyLine(new Attributed<PolyLine>(p, a));
+            }
+        }
+    }
+
+    private void transformRelation(OSMRelation relation, Map.Builder incompleteMap) {
+        if (relation.attributes().contains("type") && relation.attributes().get("type").equals("multipolygon")) {
+            Attributes a = relation.attributes().keepOnlyKeys(OSMKeys.POLYGON_KEYS);
+            if (!a.isEmpty()) {
+                List<Attributed<Polygon>> attributedPolygons = assemblePolygon(relation, a);
+                for (Attributed<Polygon> p : attributedPolygons) {
+                    incompleteMap.addPolygon(p);
                 }
             }
         }
-        Map finalMap = incompleteMap.build();
-        return finalMap;
     }
 
     private List<ClosedPolyLine> ringsForRole(OSMRelation relation, String role) {
         List<ClosedPolyLine> list = new ArrayList<ClosedPolyLine>();
         List<OSMWay> ways = new ArrayList<OSMWay>();
-        List<OSMNode> unvisitedNodes = new ArrayList<OSMNode>();
-        Graph.Builder<OSMNode> incompleteGraph = new Graph.Builder<OSMNode>();
         for (Member m : relation.members()) {
             if (Type.WAY.equals(m.type()) && m.role().equals(role)) {
                 ways.add((OSMWay)m.member());
             }
         }
-        for (OSMWay w : ways) {
-            incompleteGraph.addNode(w.firstNode());
-            List<OSMNode> nodes = w.nodes();
-            for (int j = 1 ; j < w.nodesCount() ; j++) {
-                incompleteGraph.addNode(nodes.get(j));
-                incompleteGraph.addEdge(nodes.get(j - 1), nodes.get(j));
-            }
+        // Les extrémités des chemins sont numérotées (2k pour le début
+        // du chemin k, 2k + 1 pour sa fin) et chaînées entre elles par
+        // noeud : firstEnds associe à l'identité d'un noeud la dernière
+        // extrémité qui s'y trouve, et nextEnds à chaque extrémité la
+        // précédente sur le même noeud (ou -1)
+        LongMap<Integer> firstEnds = new LongMap<Integer>();
+        int[] nextEnds = new int[2 * ways.size()];
+        for (int end = 0 ; end < nextEnds.length ; end++) {
+            long id = endNodeId(ways, end);
+            Integer first = firstEnds.get(id);
+            nextEnds[end] = (first == null) ? -1 : first;
+            firstEnds.put(id, end);
         }
-        Graph<OSMNode> graph = incompleteGraph.build();
-        unvisitedNodes.addAll(graph.nodes());
-        while (!unvisitedNodes.isEmpty()) {
+        boolean[] usedWays = new boolean[ways.size()];
+        int unclosedRings = 0;
+        for (int k = 0 ; k < ways.size() ; k++) {
+            if (usedWays[k]) {
+                continue;
+            }
+            // Les chemins sont mis bout à bout (éventuellement à
+            // l'envers) jusqu'à revenir au premier noeud de l'anneau
+            usedWays[k] = true;
             PolyLine.Builder polyLine = new PolyLine.Builder();
-            OSMNode iterator = unvisitedNodes.get(0);
-            while (unvisitedNodes.contains(iterator)) {
-                if (graph.neighborsOf(iterator).size() != 2) {
-                    return Collections.emptyList();
-                }
-                polyLine.addPoint(nodeToPoint(iterator));
-                unvisitedNodes.remove(iterator);
-                for (OSMNode n : graph.neighborsOf(iterator)) {
-                    if (unvisitedNodes.contains(n)) {
-                        iterator = n;
-                    }
+            int pointsCount = addWayPoints(polyLine, ways.get(k), true);
+            long firstId = endNodeId(ways, 2 * k);
+            long lastId = endNodeId(ways, 2 * k + 1);
+            int end;
+            while ((lastId != firstId) && ((end = unusedEnd(firstEnds.get(lastId), nextEnds, usedWays)) >= 0)) {
+                usedWays[end / 2] = true;
+                boolean forward = (end % 2 == 0);
+                pointsCount += addWayPoints(polyLine, ways.get(end / 2), forward);
+                lastId = endNodeId(ways, (end % 2 == 0) ? end + 1 : end - 1);
+            }
+            if ((lastId == firstId) && (pointsCount >= 3)) {
+                list.add(polyLine.buildClosed());
+            } else {
+                // Le reste de la chaîne ouverte, en amont de son premier
+                // chemin, est écarté avec elle
+                while ((lastId != firstId) && ((end = unusedEnd(firstEnds.get(firstId), nextEnds, usedWays)) >= 0)) {
+                    usedWays[end / 2] = true;
+                    firstId = endNodeId(ways, (end % 2 == 0) ? end + 1 : end - 1);
                 }
+                unclosedRings++;
             }
-            list.add(polyLine.buildClosed());
+        }
+        if (unclosedRings > 0) {
+            UNCLOSABLE_RINGS.addAndGet(unclosedRings);
         }
         return list;
     }
 
+    // Retourne la première extrémité, dans la chaîne commençant à
+    // l'extrémité donnée, dont le chemin n'a pas encore été utilisé
+    private static int unusedEnd(int end, int[] nextEnds, boolean[] usedWays) {
+        while ((end >= 0) && usedWays[end / 2]) {
+            end = nextEnds[end];
+        }
+        return end;
+    }
+
+    // Retourne l'identité du noeud se trouvant à l'extrémité donnée
+    private static long endNodeId(List<OSMWay> ways, int end) {
+        OSMWay way = ways.get(end / 2);
+        return way.nodeStore().id(way.nodeIndex((end % 2 == 0) ? 0 : way.nodesCount() - 1));
+    }
+
+    // Ajoute les points du chemin, sauf le dernier dans le sens de
+    // parcours (qui est le premier du chemin suivant de l'anneau)
+    private int addWayPoints(PolyLine.Builder polyLine, OSMWay way, boolean forward) {
+        double[] xy = projectedNodes(way);
+        int count = way.nodesCount() - 1;
+        for (int i = 0 ; i < count ; i++) {
+            int j = forward ? i : count - i;
+            polyLine.addPoint(xy[2 * j], xy[2 * j + 1]);
+        }
+        return Math.max(count, 0);
+    }
+
+    // Projette d'un seul coup tous les noeuds du chemin, sous
+    // forme de paires (x, y)
+    private double[] projectedNodes(OSMWay way) {
+        OSMNodeStore store = way.nodeStore();
+        double[] coordinates = new double[2 * way.nodesCount()];
+        for (int i = 0 ; i < way.nodesCount() ; i++) {
+            coordinates[2 * i] = OSMNodeStore.toRadians(store.fixedLongitude(way.nodeIndex(i)));
+            coordinates[2 * i + 1] = OSMNodeStore.toRadians(store.fixedLatitude(way.nodeIndex(i)));
+        }
+        PROJECTION.project(coordinates, coordinates, 0, way.nodesCount());
+        return coordinates;
+    }
+
     private List<Attributed<Polygon>> assemblePolygon(OSMRelation relation, Attributes attributes) {
         List<Attributed<Polygon>> attributedPolygons = new ArrayList<Attributed<Polygon>>();
         List<ClosedPolyLine> outers = ringsForRole(relation, "outer");
@@ -183,41 +376,133 @@ public final class OSMToGeoTransformer {
         };
         Collections.sort(outers, areaComparator);
         Collections.sort(inners, areaComparator);
-        ListIterator<ClosedPolyLine> iterator = inners.listIterator();
-        for (ClosedPolyLine outer : outers) {
-            List<ClosedPolyLine> holes = new ArrayList<ClosedPolyLine>();
-            while (iterator.hasNext()) {
-                if (outer.containsPoint(iterator.next().firstPoint()) & (areaComparator.compare(outer,  iterator.previous()) > 0)) {
-                    holes.add(iterator.next());
-                    iterator.remove();
-                } else {
-                    iterator.next();
+        List<List<ClosedPolyLine>> holes = new ArrayList<List<ClosedPolyLine>>(outers.size());
+        for (int i = 0 ; i < outers.size() ; i++) {
+            holes.add(new ArrayList<ClosedPolyLine>());
+        }
+        // Chaque trou appartient à la plus petite enveloppe qui contient
+        // son premier point et dont l'aire est supérieure à la sienne ; seules
+        // les enveloppes dont la boîte englobante contient ce point sont testées
+        ShellGrid grid = new ShellGrid(outers);
+        for (ClosedPolyLine inner : inners) {
+            Point p = inner.firstPoint();
+            double area = inner.area();
+            for (int i : grid.candidates(p)) {
+                if ((outers.get(i).area() > area) && outers.get(i).boundingBoxContains(p) && outers.get(i).containsPoint(p)) {
+                    holes.get(i).add(inner);
+                    break;
                 }
             }
-            iterator = inners.listIterator();
-            if (holes.isEmpty()) {
-                attributedPolygons.add(new Attributed<Polygon>(new Polygon(outer), attributes));
+        }
+        for (int i = 0 ; i < outers.size() ; i++) {
+            if (holes.get(i).isEmpty()) {
+                attributedPolygons.add(new Attributed<Polygon>(new Polygon(outers.get(i)), attributes));
             } else {
-                attributedPolygons.add(new Attributed<Polygon>(new Polygon(outer, holes), attributes));
+                attributedPolygons.add(new Attributed<Polygon>(new Polygon(outers.get(i), holes.get(i)), attributes));
             }
         }
         return attributedPolygons;
     }
 
-    private Point nodeToPoint(OSMNode n) {
-        return PROJECTION.project(n.position());
-    }
-    
-    private boolean validArea(OSMWay way) {
-        if (way.attributes().contains("area") && AREA_VALUES.contains(way.attributes().get("area"))) {
-            return true;
-        } else {
-            for (String s : AREA_KEYS) {
-                if (way.attributes().contains(s)) {
-                    return true;
+    /**
+     * Classe représentant une grille régulière couvrant les boîtes
+     * englobantes d'un ensemble d'enveloppes, dont chaque case
+     * connaît (dans l'ordre de la liste) les enveloppes dont la
+     * boîte englobante la touche
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    private static final class ShellGrid {
+        private static final int[] NO_CANDIDATES = new int[0];
+        private final int SIZE;
+        private final double MIN_X;
+        private final double MIN_Y;
+        private final double MAX_X;
+        private final double MAX_Y;
+        private final double CELL_WIDTH;
+        private final double CELL_HEIGHT;
+        private final int[][] CELLS;
+
+        /**
+         * Construit la grille des enveloppes passées en paramètre,
+         * avec environ une case par enveloppe
+         *
+         * @author Raja Soufi (247680)
+         * @author Andrey Batasov (250149)
+         *
+         * @param shells
+         *      la liste des enveloppes
+         */
+        public ShellGrid(List<ClosedPolyLine> shells) {
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (ClosedPolyLine shell : shells) {
+                minX = Math.min(minX, shell.minX());
+                minY = Math.min(minY, shell.minY());
+                maxX = Math.max(maxX, shell.maxX());
+                maxY = Math.max(maxY, shell.maxY());
+            }
+            SIZE = (int)Math.ceil(Math.sqrt(shells.size()));
+            MIN_X = minX;
+            MIN_Y = minY;
+            MAX_X = maxX;
+            MAX_Y = maxY;
+            CELL_WIDTH = (maxX - minX) / SIZE;
+            CELL_HEIGHT = (maxY - minY) / SIZE;
+            // Les cases sont remplies en deux passes : la première
+            // compte les enveloppes de chaque case, la seconde les y range
+            int[] counts = new int[SIZE * SIZE];
+            CELLS = new int[counts.length][];
+            for (int pass = 0 ; pass < 2 ; pass++) {
+                for (int i = 0 ; i < shells.size() ; i++) {
+                    ClosedPolyLine shell = shells.get(i);
+                    for (int row = row(shell.minY()) ; row <= row(shell.maxY()) ; row++) {
+                        for (int column = column(shell.minX()) ; column <= column(shell.maxX()) ; column++) {
+                            int cell = row * SIZE + column;
+                            if (pass == 0) {
+                                counts[cell]++;
+                            } else {
+                                CELLS[cell][CELLS[cell].length - counts[cell]--] = i;
+                            }
+                        }
+                    }
+                }
+                if (pass == 0) {
+                    for (int cell = 0 ; cell < counts.length ; cell++) {
+                        CELLS[cell] = (counts[cell] == 0) ? NO_CANDIDATES : new int[counts[cell]];
+                    }
                 }
             }
-            return false;
+        }
+
+        /**
+         * Méthode qui retourne les indices, dans l'ordre croissant,
+         * des enveloppes dont la boîte englobante est susceptible
+         * de contenir le point donné
+         *
+         * @author Raja Soufi (247680)
+         * @author Andrey Batasov (250149)
+         *
+         * @param p
+         *      le point
+         *
+         * @return CELLS[...]
+         *      les indices des enveloppes candidates
+         */
+        public int[] candidates(Point p) {
+            if ((SIZE == 0) || !(p.x() >= MIN_X) || !(p.y() >= MIN_Y) || !(p.x() <= MAX_X) || !(p.y() <= MAX_Y)) {
+                return NO_CANDIDATES;
+            }
+            return CELLS[row(p.y()) * SIZE + column(p.x())];
+        }
+
+        private int column(double x) {
+            return (CELL_WIDTH > 0) ? Math.min((int)((x - MIN_X) / CELL_WIDTH), SIZE - 1) : 0;
+        }
+
+        private int row(double y) {
+            return (CELL_HEIGHT > 0) ? Math.min((int)((y - MIN_Y) / CELL_HEIGHT), SIZE - 1) : 0;
         }
     }
 }
@@ -2,19 +2,28 @@ package ch.epfl.imhof.osm;
 
 import ch.epfl.imhof.Attributes;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Classe représentant un chemin OpenStreetMap,
- * c-à-d un ensemble de noeuds OSM
+ * c-à-d un ensemble de noeuds OSM. Les noeuds du chemin
+ * sont désignés par leurs indices dans un stockage de
+ * noeuds en colonnes. La classification du chemin (fermé
+ * ou non, surface ou non, présence des clefs gardées pour
+ * les polylignes et les polygones) est calculée une fois
+ * pour toutes à la construction
  * 
  * @author Andrey Batasov (250149)
  * @author Raja Soufi (247680)
  */
 public final class OSMWay extends OSMEntity {
-    private final List<OSMNode> NODES;
+    private final OSMNodeStore STORE;
+    private final int[] INDICES;
+    // Les indicateurs de OSMKeys, et CLOSED
+    private final int FLAGS;
+    private static final int CLOSED = 8;
     
     /**
      * Construit un chemin OSM seulement s'il existe au moins 2 noeuds
@@ -35,11 +44,39 @@ public final class OSMWay extends OSMEntity {
      *      Si la liste "nodes" contient moins que 2 noeuds
      */
     public OSMWay(long id, List<OSMNode> nodes, Attributes attributes) {
+        this(id, storeOf(nodes), identity(nodes.size()), attributes);
+    }
+    
+    /**
+     * Construit un chemin OSM dont les noeuds sont ceux du
+     * stockage donné aux indices donnés, seulement s'il y en
+     * a au moins 2. Sinon, "IllegalArgumentException" est lancé
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @param id
+     *      L'identificateur du chemin
+     * @param store
+     *      Le stockage contenant les noeuds du chemin
+     * @param indices
+     *      Les indices, dans le stockage, des noeuds qui
+     *      composent le chemin
+     * @param attributes
+     *      Les attributs qui sont associés au chemin
+     *      
+     * @throws IllegalArgumentException
+     *      Si le chemin contient moins que 2 noeuds
+     */
+    OSMWay(long id, OSMNodeStore store, int[] indices, Attributes attributes) {
         super(id, attributes);
-        if (nodes.size() < 2) {
+        if (indices.length < 2) {
             throw new IllegalArgumentException("A way must have at least 2 nodes.");
         } else {
-            NODES = Collections.unmodifiableList(new ArrayList<OSMNode>(nodes));
+            STORE = store;
+            INDICES = indices;
+            boolean closed = store.id(indices[0]) == store.id(indices[indices.length - 1]);
+            FLAGS = OSMKeys.flags(attributes) | (closed ? CLOSED : 0);
         }
     }
     
@@ -49,25 +86,27 @@ public final class OSMWay extends OSMEntity {
      * @author Andrey Batasov (250149)
      * @author Raja Soufi (247680)
      * 
-     * @return NODES.size()
+     * @return INDICES.length
      *      Le nombre de noeuds qui composent le chemin
      */
     public int nodesCount() {
-        return NODES.size();
+        return INDICES.length;
     }
     
     /**
      * Méthode qui retourne une vue
      * non modifiable de la liste des noeuds du chemin
+     * (les noeuds sont reconstruits à partir du stockage
+     * à chaque accès)
      * 
      * @author Andrey Batasov (250149)
      * @author Raja Soufi (247680)
      * 
-     * @return NODES
+     * @return nodes(nodesCount())
      *      La liste des noeuds du chemin
      */
     public List<OSMNode> nodes() {
-        return NODES;
+        return nodes(nodesCount());
     }
     
     /**
@@ -79,13 +118,55 @@ public final class OSMWay extends OSMEntity {
      * @author Andrey Batasov (250149)
      * @author Raja Soufi (247680)
      * 
-     * @return NODES.subList(0, nodesCount() - 1) ou nodes
-     *      La liste des noeuds sans le dernier
-     * @return NODES
-     *      La liste des noeuds
+     * @return nodes(nonRepeatingNodesCount())
+     *      La liste des noeuds, sans le dernier si le chemin est fermé
      */
     public List<OSMNode> nonRepeatingNodes() {
-        return isClosed() ? NODES.subList(0, nodesCount() - 1) : NODES;
+        return nodes(nonRepeatingNodesCount());
+    }
+    
+    /**
+     * Méthode qui retourne le nombre de noeuds de la liste
+     * retournée par nonRepeatingNodes()
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @return isClosed() ? nodesCount() - 1 : nodesCount()
+     *      Le nombre de noeuds sans répétition
+     */
+    public int nonRepeatingNodesCount() {
+        return isClosed() ? nodesCount() - 1 : nodesCount();
+    }
+    
+    /**
+     * Getter du stockage contenant les noeuds du chemin
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @return STORE
+     *      Le stockage des noeuds
+     */
+    public OSMNodeStore nodeStore() {
+        return STORE;
+    }
+    
+    /**
+     * Méthode qui retourne l'indice, dans le stockage des
+     * noeuds, du noeud du chemin à la position donnée
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @param i
+     *      La position du noeud dans le chemin
+     * 
+     * @return INDICES[i]
+     *      L'indice du noeud dans le stockage
+     */
+    public int nodeIndex(int i) {
+        return INDICES[i];
     }
     
     /**
@@ -94,11 +175,11 @@ public final class OSMWay extends OSMEntity {
      * @author Andrey Batasov (250149)
      * @author Raja Soufi (247680)
      * 
-     * @return NODES.get(0)
+     * @return STORE.node(INDICES[0])
      *      Le premier noeud du chemin
      */
     public OSMNode firstNode() {
-        return NODES.get(0);
+        return STORE.node(INDICES[0]);
     }
     
     /**
@@ -107,11 +188,11 @@ public final class OSMWay extends OSMEntity {
      * @author Andrey Batasov (250149)
      * @author Raja Soufi (247680)
      * 
-     * @return NODES.get(nodesCount() - 1)
+     * @return STORE.node(INDICES[nodesCount() - 1])
      *      Le dernier noeud du chemin
      */
     public OSMNode lastNode() {
-        return NODES.get(nodesCount() - 1);
+        return STORE.node(INDICES[nodesCount() - 1]);
     }
     
     /**
@@ -121,12 +202,88 @@ public final class OSMWay extends OSMEntity {
      * @author Andrey Batasov (250149)
      * @author Raja Soufi (247680)
      * 
-     * @return firstNode().equals(lastNode())
+     * @return ((FLAGS & CLOSED) != 0)
      *      Valeur true si le noeud est bien fermé.
      *      Valeur false si le noeud est ouvert
      */
     public boolean isClosed() {
-        return firstNode().equals(lastNode());
+        return (FLAGS & CLOSED) != 0;
+    }
+    
+    /**
+     * Méthode qui teste si les attributs du chemin en font une
+     * surface lorsqu'il est fermé (attribut area valant yes, 1
+     * ou true, ou l'une des clefs de surface)
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @return ((FLAGS & OSMKeys.AREA) != 0)
+     *      le résultat du test
+     */
+    boolean isArea() {
+        return (FLAGS & OSMKeys.AREA) != 0;
+    }
+    
+    /**
+     * Méthode qui teste si le chemin possède un attribut
+     * gardé pour les polylignes
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @return ((FLAGS & OSMKeys.POLYLINE_KEY) != 0)
+     *      le résultat du test
+     */
+    boolean hasPolyLineKey() {
+        return (FLAGS & OSMKeys.POLYLINE_KEY) != 0;
+    }
+    
+    /**
+     * Méthode qui teste si le chemin possède un attribut
+     * gardé pour les polygones
+     * 
+     * @author Andrey Batasov (250149)
+     * @author Raja Soufi (247680)
+     * 
+     * @return ((FLAGS & OSMKeys.POLYGON_KEY) != 0)
+     *      le résultat du test
+     */
+    boolean hasPolygonKey() {
+        return (FLAGS & OSMKeys.POLYGON_KEY) != 0;
+    }
+    
+    private List<OSMNode> nodes(int count) {
+        return new AbstractList<OSMNode>() {
+            @Override
+            public OSMNode get(int index) {
+                if ((index < 0) || (index >= count)) {
+                    throw new IndexOutOfBoundsException();
+                }
+                return STORE.node(INDICES[index]);
+            }
+            
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+    
+    private static OSMNodeStore storeOf(List<OSMNode> nodes) {
+        OSMNodeStore store = new OSMNodeStore();
+        for (OSMNode node : nodes) {
+            store.add(node);
+        }
+        return store;
+    }
+    
+    private static int[] identity(int size) {
+        int[] indices = new int[size];
+        for (int i = 0 ; i < size ; i++) {
+            indices[i] = i;
+        }
+        return indices;
     }
     
     /**
@@ -137,7 +294,9 @@ public final class OSMWay extends OSMEntity {
      * @author Raja Soufi (247680)
      */
     public final static class Builder extends OSMEntity.Builder {
-        private final List<OSMNode> NODES;
+        private OSMNodeStore store;
+        private int[] indices;
+        private int count;
         
         /**
          * Construit un bâtisseur pour un chemin ayant l'identifiant donné
@@ -150,7 +309,9 @@ public final class OSMWay extends OSMEntity {
          */
         public Builder(long id) {
             super(id);
-            NODES = new ArrayList<OSMNode>();
+            store = null;
+            indices = new int[8];
+            count = 0;
         }
         
         /**
@@ -162,9 +323,51 @@ public final class OSMWay extends OSMEntity {
          * 
          * @param node
          *      Le noeud qu'on voudrait ajouter au chemin
+         * 
+         * @throws IllegalStateException
+         *      Si des noeuds d'un stockage partagé ont déjà
+         *      été ajoutés au chemin
          */
         public void addNode(OSMNode node) {
-            NODES.add(node);
+            if (store == null) {
+                store = new OSMNodeStore();
+            } else if (store.size() != count) {
+                throw new IllegalStateException("The way already uses a shared node store.");
+            }
+            addIndex(store.add(node));
+        }
+        
+        /**
+         * Méthode qui ajoute à un chemin en cours de construction
+         * le noeud d'indice donné dans le stockage donné (tous les
+         * noeuds d'un chemin doivent provenir du même stockage)
+         * 
+         * @author Andrey Batasov (250149)
+         * @author Raja Soufi (247680)
+         * 
+         * @param store
+         *      Le stockage contenant le noeud
+         * @param index
+         *      L'indice du noeud dans le stockage
+         * 
+         * @throws IllegalArgumentException
+         *      Si des noeuds d'un autre stockage ont déjà été
+         *      ajoutés au chemin
+         */
+        public void addNode(OSMNodeStore store, int index) {
+            if (this.store == null) {
+                this.store = store;
+            } else if (this.store != store) {
+                throw new IllegalArgumentException("All the nodes of a way must come from the same store.");
+            }
+            addIndex(index);
+        }
+        
+        private void addIndex(int index) {
+            if (count == indices.length) {
+                indices = Arrays.copyOf(indices, 2 * count);
+            }
+            indices[count++] = index;
         }
         
         /**
@@ -178,15 +381,15 @@ public final class OSMWay extends OSMEntity {
          * @throws IllegalStateException
          *      Si le chemin est incomplet
          * 
-         * @return new OSMWay(ID, NODES, ATTRIBUTES.build())
-         *      Le nouveau chemin bâti avec l'identificateur, la liste de
+         * @return new OSMWay(ID, store, indices, ATTRIBUTES.build())
+         *      Le nouveau chemin bâti avec l'identificateur, les
          *      noeuds et les attributs passés au constructeur
          */
         public OSMWay build() {
             if (isIncomplete()) {
                 throw new IllegalStateException("The way is incomplete.");
             } else {
-                return new OSMWay(ID, NODES, ATTRIBUTES.build());
+                return new OSMWay(ID, store, Arrays.copyOf(indices, count), ATTRIBUTES.build());
             }
         }
         
@@ -198,13 +401,13 @@ public final class OSMWay extends OSMEntity {
          * @author Andrey Batasov (250149)
          * @author Raja Soufi (247680)
          * 
-         * @return (super.isIncomplete() || (NODES.size() < 2))
+         * @return (super.isIncomplete() || (count < 2))
          *      Retourne true si la taille du chemin est plus petite que 2
          *      et false si le chemin est complet, c-à-d s'il contient 2 noeuds
          *      ou plus
          */
         public boolean isIncomplete() {
-            return (super.isIncomplete() || (NODES.size() < 2));
+            return (super.isIncomplete() || (count < 2));
         }
     }
 }
@@ -0,0 +1,620 @@
+package ch.epfl.imhof.osm;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import ch.epfl.imhof.osm.OSMRelation.Member.Type;
+import static ch.epfl.imhof.osm.OSMNodeStore.toFixed;
+
+/**
+ * Classe représentant un analyseur de fichiers OSM au format
+ * XML, spécialisé pour les seuls éléments utiles à la carte
+ * (node, way, nd, relation, member et tag). Contrairement à
+ * un analyseur SAX, il travaille directement sur les octets
+ * du fichier : les nombres sont lus sans passer par des
+ * chaînes de caractères, et les clefs et valeurs des attributs
+ * sont partagées à l'aide d'un petit dictionnaire. Il transmet
+ * exactement les mêmes éléments que l'analyseur SAX
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class OSMXMLScanner {
+    private static final int OTHER = 0;
+    private static final int NODE = 1;
+    private static final int WAY = 2;
+    private static final int ND = 3;
+    private static final int RELATION = 4;
+    private static final int MEMBER = 5;
+    private static final int TAG = 6;
+
+    private static final byte[][] ELEMENT_NAMES = {null, bytes("node"), bytes("way"), bytes("nd"), bytes("relation"), bytes("member"), bytes("tag")};
+    private static final byte[] ID = bytes("id");
+    private static final byte[] REF = bytes("ref");
+    private static final byte[] LAT = bytes("lat");
+    private static final byte[] LON = bytes("lon");
+    private static final byte[] K = bytes("k");
+    private static final byte[] V = bytes("v");
+    private static final byte[] ROLE = bytes("role");
+    private static final byte[] TYPE = bytes("type");
+    private static final long[] POWERS_OF_TEN = {10_000_000, 1_000_000, 100_000, 10_000, 1_000, 100, 10, 1};
+
+    private final InputStream IN;
+    private final OSMHandler HANDLER;
+    private final StringDictionary STRINGS;
+    private final byte[] BUFFER;
+    private final byte[] ENTITY;
+    private int position = 0;
+    private int limit = 0;
+    private byte[] name = new byte[32];
+    private int nameLength = 0;
+    private byte[] value = new byte[256];
+    private int valueLength = 0;
+
+    private long id;
+    private long ref;
+    private int longitude;
+    private int latitude;
+    private String key;
+    private String tagValue;
+    private String role;
+    private Type type;
+    private boolean hasId;
+    private boolean hasRef;
+    private boolean hasLongitude;
+    private boolean hasLatitude;
+
+    /**
+     * Construit un analyseur qui lit le flot donné et
+     * transmet les éléments lus au récepteur donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param in
+     *      le flot à lire, encodé en UTF-8
+     * @param handler
+     *      le récepteur des éléments lus
+     */
+    public OSMXMLScanner(InputStream in, OSMHandler handler) {
+        IN = in;
+        HANDLER = handler;
+        STRINGS = new StringDictionary();
+        BUFFER = new byte[64 * 1024];
+        ENTITY = new byte[16];
+    }
+
+    /**
+     * Construit un analyseur qui lit les octets donnés (par
+     * exemple un morceau de fichier découpé par OSMXMLSplitter)
+     * et transmet les éléments lus au récepteur donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param bytes
+     *      les octets à lire, encodés en UTF-8
+     * @param handler
+     *      le récepteur des éléments lus
+     */
+    public OSMXMLScanner(byte[] bytes, OSMHandler handler) {
+        IN = null;
+        HANDLER = handler;
+        STRINGS = new StringDictionary();
+        BUFFER = bytes;
+        ENTITY = new byte[16];
+        limit = bytes.length;
+    }
+
+    /**
+     * Méthode qui lit tout le flot et transmet les éléments
+     * lus au récepteur, dans l'ordre du fichier
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée ou
+     *      si le fichier est mal formé
+     */
+    public void scan() throws IOException {
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '<') {
+                readMarkup();
+            }
+        }
+    }
+
+    private void readMarkup() throws IOException {
+        int c = read();
+        switch (c) {
+            case '?':
+                skipUntil('?', '>');
+                break;
+            case '!':
+                c = read();
+                if (c == '-') {
+                    read();
+                    skipUntil('-', '-');
+                    expect(read(), '>');
+                } else if (c == '[') {
+                    skipUntil(']', ']');
+                    expect(read(), '>');
+                } else {
+                    skipDeclaration(c);
+                }
+                break;
+            case '/':
+                c = readName(read());
+                int element = element();
+                c = skipWhitespace(c);
+                expect(c, '>');
+                endElement(element);
+                break;
+            default:
+                readElement(c);
+                break;
+        }
+    }
+
+    private void readElement(int first) throws IOException {
+        int c = readName(first);
+        int element = element();
+        hasId = false;
+        hasRef = false;
+        hasLongitude = false;
+        hasLatitude = false;
+        key = null;
+        tagValue = null;
+        role = null;
+        type = null;
+        while (true) {
+            c = skipWhitespace(c);
+            if (c == '>') {
+                startElement(element);
+                return;
+            } else if (c == '/') {
+                expect(read(), '>');
+                startElement(element);
+                endElement(element);
+                return;
+            }
+            c = readAttribute(c, element);
+        }
+    }
+
+    private int readAttribute(int first, int element) throws IOException {
+        int c = readName(first);
+        c = skipWhitespace(c);
+        expect(c, '=');
+        int quote = skipWhitespace(read());
+        if ((quote != '"') && (quote != '\'')) {
+            throw new IOException("Malformed attribute: expected a quote.");
+        }
+        readValue(quote);
+        if (element == OTHER) {
+            return read();
+        }
+        if (nameIs(ID)) {
+            id = parseLong();
+            hasId = true;
+        } else if (nameIs(REF)) {
+            ref = parseLong();
+            hasRef = true;
+        } else if (nameIs(LON)) {
+            longitude = parseFixed();
+            hasLongitude = true;
+        } else if (nameIs(LAT)) {
+            latitude = parseFixed();
+            hasLatitude = true;
+        } else if (nameIs(K)) {
+            key = STRINGS.get(value, valueLength);
+        } else if (nameIs(V)) {
+            tagValue = STRINGS.get(value, valueLength);
+        } else if (nameIs(ROLE)) {
+            role = STRINGS.get(value, valueLength);
+        } else if (nameIs(TYPE)) {
+            type = memberType();
+        }
+        return read();
+    }
+
+    private void startElement(int element) throws IOException {
+        switch (element) {
+            case NODE:
+                require(hasId && hasLongitude && hasLatitude, "node");
+                HANDLER.node(id, longitude, latitude);
+                break;
+            case WAY:
+                require(hasId, "way");
+                HANDLER.startWay(id);
+                break;
+            case ND:
+                require(hasRef, "nd");
+                HANDLER.wayNode(ref);
+                break;
+            case RELATION:
+                require(hasId, "relation");
+                HANDLER.startRelation(id);
+                break;
+            case MEMBER:
+                if (type != null) {
+                    require(hasRef, "member");
+                    HANDLER.member(type, ref, role);
+                }
+                break;
+            case TAG:
+                HANDLER.tag(key, tagValue);
+                break;
+            default: break;
+        }
+    }
+
+    private void endElement(int element) {
+        switch (element) {
+            case WAY:
+                HANDLER.endWay();
+                break;
+            case RELATION:
+                HANDLER.endRelation();
+                break;
+            default: break;
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            if (IN == null) {
+                return -1;
+            }
+            limit = IN.read(BUFFER, 0, BUFFER.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return BUFFER[position++] & 0xFF;
+    }
+
+    private int readName(int first) throws IOException {
+        int c = first;
+        nameLength = 0;
+        while ((c >= 0) && !isWhitespace(c) && (c != '=') && (c != '>') && (c != '/')) {
+            if (nameLength == name.length) {
+                name = Arrays.copyOf(name, 2 * nameLength);
+            }
+            name[nameLength++] = (byte)c;
+            c = read();
+        }
+        if (c < 0) {
+            throw new EOFException("Unexpected end of OSM file.");
+        }
+        return c;
+    }
+
+    private void readValue(int quote) throws IOException {
+        valueLength = 0;
+        boolean afterReturn = false;
+        int c;
+        while ((c = read()) != quote) {
+            if (c < 0) {
+                throw new EOFException("Unexpected end of OSM file.");
+            }
+            // Normalisation des valeurs d'attributs imposée par XML
+            if (c == '\n' && afterReturn) {
+                afterReturn = false;
+                continue;
+            }
+            afterReturn = (c == '\r');
+            if (c == '&') {
+                appendCodePoint(readEntity());
+            } else if ((c == '\t') || (c == '\n') || (c == '\r')) {
+                append(' ');
+            } else {
+                append(c);
+            }
+        }
+    }
+
+    private int readEntity() throws IOException {
+        int length = 0;
+        int c;
+        while ((c = read()) != ';') {
+            if ((c < 0) || (length == ENTITY.length)) {
+                throw new IOException("Malformed character reference.");
+            }
+            ENTITY[length++] = (byte)c;
+        }
+        String entity = new String(ENTITY, 0, length, StandardCharsets.US_ASCII);
+        if ((length > 1) && (entity.charAt(0) == '#')) {
+            boolean hex = (entity.charAt(1) == 'x');
+            try {
+                return Integer.parseInt(entity.substring(hex ? 2 : 1), hex ? 16 : 10);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed character reference: " + entity, e);
+            }
+        }
+        switch (entity) {
+            case "amp": return '&';
+            case "lt": return '<';
+            case "gt": return '>';
+            case "quot": return '"';
+            case "apos": return '\'';
+            default: throw new IOException("Unknown entity: " + entity);
+        }
+    }
+
+    private void append(int b) {
+        if (valueLength == value.length) {
+            value = Arrays.copyOf(value, 2 * valueLength);
+        }
+        value[valueLength++] = (byte)b;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint < 0x80) {
+            append(codePoint);
+        } else if (codePoint < 0x800) {
+            append(0xC0 | (codePoint >> 6));
+            append(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            append(0xE0 | (codePoint >> 12));
+            append(0x80 | ((codePoint >> 6) & 0x3F));
+            append(0x80 | (codePoint & 0x3F));
+        } else {
+            append(0xF0 | (codePoint >> 18));
+            append(0x80 | ((codePoint >> 12) & 0x3F));
+            append(0x80 | ((codePoint >> 6) & 0x3F));
+            append(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private int skipWhitespace(int first) throws IOException {
+        int c = first;
+        while (isWhitespace(c)) {
+            c = read();
+        }
+        if (c < 0) {
+            throw new EOFException("Unexpected end of OSM file.");
+        }
+        return c;
+    }
+
+    private void skipUntil(int first, int second) throws IOException {
+        int previous = -1;
+        int c;
+        while ((c = read()) >= 0) {
+            if ((previous == first) && (c == second)) {
+                return;
+            }
+            previous = c;
+        }
+        throw new EOFException("Unexpected end of OSM file.");
+    }
+
+    private void skipDeclaration(int first) throws IOException {
+        int depth = 0;
+        int c = first;
+        while ((c != '>') || (depth > 0)) {
+            if (c < 0) {
+                throw new EOFException("Unexpected end of OSM file.");
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+            c = read();
+        }
+    }
+
+    private static void expect(int c, int expected) throws IOException {
+        if (c != expected) {
+            throw new IOException("Malformed OSM file: expected '" + (char)expected + "'.");
+        }
+    }
+
+    private static void require(boolean present, String element) throws IOException {
+        if (!present) {
+            throw new IOException("Missing attribute in element " + element + ".");
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return (c == ' ') || (c == '\n') || (c == '\r') || (c == '\t');
+    }
+
+    private int element() {
+        for (int i = 1 ; i < ELEMENT_NAMES.length ; i++) {
+            if (nameIs(ELEMENT_NAMES[i])) {
+                return i;
+            }
+        }
+        return OTHER;
+    }
+
+    private boolean nameIs(byte[] expected) {
+        if (nameLength != expected.length) {
+            return false;
+        }
+        for (int i = 0 ; i < nameLength ; i++) {
+            if (name[i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean valueIs(byte[] expected) {
+        if (valueLength != expected.length) {
+            return false;
+        }
+        for (int i = 0 ; i < valueLength ; i++) {
+            if (value[i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Type memberType() {
+        if (valueIs(ELEMENT_NAMES[NODE])) {
+            return Type.NODE;
+        } else if (valueIs(ELEMENT_NAMES[WAY])) {
+            return Type.WAY;
+        } else if (valueIs(ELEMENT_NAMES[RELATION])) {
+            return Type.RELATION;
+        }
+        return null;
+    }
+
+    private long parseLong() {
+        int i = 0;
+        boolean negative = (valueLength > 1) && (value[0] == '-');
+        if (negative) {
+            i++;
+        }
+        if ((valueLength == i) || (valueLength - i > 18)) {
+            return Long.parseLong(valueString());
+        }
+        long result = 0;
+        for ( ; i < valueLength ; i++) {
+            int digit = value[i] - '0';
+            if ((digit < 0) || (digit > 9)) {
+                return Long.parseLong(valueString());
+            }
+            result = 10 * result + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    private int parseFixed() {
+        // Les coordonnées ayant au plus 7 décimales (toujours le cas
+        // dans les fichiers OSM) sont converties exactement, les
+        // autres sont lues comme avant, via un double
+        int i = 0;
+        boolean negative = (valueLength > 1) && (value[0] == '-');
+        if (negative) {
+            i++;
+        }
+        long integer = 0;
+        int integerDigits = 0;
+        for ( ; (i < valueLength) && (value[i] != '.') ; i++) {
+            int digit = value[i] - '0';
+            if ((digit < 0) || (digit > 9) || (integerDigits == 3)) {
+                return toFixed(Double.parseDouble(valueString()));
+            }
+            integer = 10 * integer + digit;
+            integerDigits++;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        for (i++ ; i < valueLength ; i++) {
+            int digit = value[i] - '0';
+            if ((digit < 0) || (digit > 9) || (fractionDigits == 7)) {
+                return toFixed(Double.parseDouble(valueString()));
+            }
+            fraction = 10 * fraction + digit;
+            fractionDigits++;
+        }
+        if (integerDigits + fractionDigits == 0) {
+            return toFixed(Double.parseDouble(valueString()));
+        }
+        long fixed = integer * POWERS_OF_TEN[0] + fraction * POWERS_OF_TEN[fractionDigits];
+        return (int)(negative ? -fixed : fixed);
+    }
+
+    private String valueString() {
+        return new String(value, 0, valueLength, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Classe représentant un dictionnaire de chaînes de
+     * caractères, indexé par leurs octets UTF-8, qui permet
+     * de ne construire qu'une seule chaîne pour les clefs et
+     * valeurs d'attributs qui se répètent. Les chaînes trop
+     * longues ne sont pas conservées, et la taille du
+     * dictionnaire est bornée
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    private static final class StringDictionary {
+        private static final int MAX_LENGTH = 64;
+        private static final int MAX_SIZE = 1 << 16;
+
+        private byte[][] keys = new byte[256][];
+        private String[] strings = new String[256];
+        private int[] hashes = new int[256];
+        private int size = 0;
+
+        private String get(byte[] bytes, int length) {
+            if (length > MAX_LENGTH) {
+                return new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+            int hash = 1;
+            for (int i = 0 ; i < length ; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null) {
+                if ((hashes[slot] == hash) && equal(keys[slot], bytes, length)) {
+                    return strings[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            String string = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            if (size < MAX_SIZE) {
+                keys[slot] = Arrays.copyOf(bytes, length);
+                strings[slot] = string;
+                hashes[slot] = hash;
+                if (2 * (++size) > keys.length) {
+                    grow();
+                }
+            }
+            return string;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            String[] oldStrings = strings;
+            int[] oldHashes = hashes;
+            keys = new byte[2 * oldKeys.length][];
+            strings = new String[keys.length];
+            hashes = new int[keys.length];
+            int mask = keys.length - 1;
+            for (int i = 0 ; i < oldKeys.length ; i++) {
+                if (oldKeys[i] != null) {
+                    int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+                    while (keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    strings[slot] = oldStrings[i];
+                    hashes[slot] = oldHashes[i];
+                }
+            }
+        }
+
+        private static boolean equal(byte[] key, byte[] bytes, int length) {
+            if (key.length != length) {
+                return false;
+            }
+            for (int i = 0 ; i < length ; i++) {
+                if (key[i] != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
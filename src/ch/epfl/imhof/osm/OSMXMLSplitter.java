@@ -0,0 +1,189 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Classe représentant un découpeur de fichiers OSM au format
+ * XML en morceaux qui peuvent être analysés indépendamment les
+ * uns des autres par OSMXMLScanner. Un morceau ne se termine
+ * que juste avant le début d'une balise, jamais dans une balise,
+ * une valeur d'attribut, un commentaire, une section CDATA, une
+ * instruction de traitement ou une déclaration. L'analyseur ne
+ * gardant aucun état d'une balise à l'autre, analyser les morceaux
+ * l'un après l'autre transmet exactement les mêmes éléments
+ * qu'analyser le fichier entier
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class OSMXMLSplitter {
+    // Les états du découpeur, qui reconnaît les constructions XML
+    // de la même manière que OSMXMLScanner
+    private static final int TEXT = 0;
+    private static final int TAG = 1;
+    private static final int VALUE = 2;
+    private static final int INSTRUCTION = 3;
+    private static final int COMMENT = 4;
+    private static final int CDATA = 5;
+    private static final int DECLARATION = 6;
+
+    private final InputStream IN;
+    private final int CHUNK_SIZE;
+    private byte[] buffer;
+    private int length = 0;
+    private boolean isAtEnd = false;
+
+    /**
+     * Construit un découpeur qui lit le flot donné et le découpe
+     * en morceaux d'au moins la taille donnée (sauf le dernier)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param in
+     *      le flot à découper
+     * @param chunkSize
+     *      la taille minimale des morceaux, en octets
+     *
+     * @throws IllegalArgumentException
+     *      si la taille n'est pas strictement positive
+     */
+    public OSMXMLSplitter(InputStream in, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be strictly positive.");
+        }
+        IN = in;
+        CHUNK_SIZE = chunkSize;
+        buffer = new byte[chunkSize + 64 * 1024];
+    }
+
+    /**
+     * Méthode qui retourne le prochain morceau du flot, qui se
+     * termine au premier début de balise situé après la taille
+     * minimale des morceaux, ou à la fin du flot
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @throws IOException
+     *      si une erreur d'entrée/sortie est rencontrée
+     *
+     * @return chunk
+     *      le morceau, ou null à la fin du flot
+     */
+    public byte[] next() throws IOException {
+        int state = TEXT;
+        int previous = -1;
+        int quote = 0;
+        int depth = 0;
+        int i = 0;
+        while (true) {
+            // Un début de balise est reconnu à l'aide des deux octets qui le suivent
+            if ((i + 2 >= length) && !isAtEnd) {
+                fill();
+                continue;
+            }
+            if (i >= length) {
+                return (length == 0) ? null : cut(length);
+            }
+            int c = buffer[i] & 0xFF;
+            switch (state) {
+                case TEXT:
+                    if (c == '<') {
+                        if (i >= CHUNK_SIZE) {
+                            return cut(i);
+                        }
+                        int next = byteAt(i + 1);
+                        if (next == '?') {
+                            state = INSTRUCTION;
+                            previous = -1;
+                            i++;
+                        } else if (next == '!') {
+                            int after = byteAt(i + 2);
+                            if (after == '-') {
+                                // OSMXMLScanner saute "<!-" et l'octet suivant
+                                state = COMMENT;
+                                previous = -1;
+                                i += 3;
+                            } else if (after == '[') {
+                                state = CDATA;
+                                previous = -1;
+                                i += 2;
+                            } else {
+                                state = DECLARATION;
+                                depth = 0;
+                                i++;
+                            }
+                        } else {
+                            state = TAG;
+                        }
+                    }
+                    break;
+                case TAG:
+                    if ((c == '"') || (c == '\'')) {
+                        state = VALUE;
+                        quote = c;
+                    } else if (c == '>') {
+                        state = TEXT;
+                    }
+                    break;
+                case VALUE:
+                    if (c == quote) {
+                        state = TAG;
+                    }
+                    break;
+                case INSTRUCTION:
+                    if ((previous == '?') && (c == '>')) {
+                        state = TEXT;
+                    }
+                    previous = c;
+                    break;
+                case COMMENT:
+                case CDATA:
+                    // Le '>' qui suit "--" ou "]]" est ensuite lu comme du texte
+                    if (previous == ((state == COMMENT) ? '-' : ']') && (c == previous)) {
+                        state = TEXT;
+                    }
+                    previous = c;
+                    break;
+                default:
+                    if (c == '[') {
+                        depth++;
+                    } else if (c == ']') {
+                        depth--;
+                    } else if ((c == '>') && (depth <= 0)) {
+                        state = TEXT;
+                    }
+                    break;
+            }
+            i++;
+        }
+    }
+
+    private int byteAt(int i) {
+        return (i < length) ? (buffer[i] & 0xFF) : -1;
+    }
+
+    private void fill() throws IOException {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * length);
+        }
+        int read = IN.read(buffer, length, buffer.length - length);
+        if (read < 0) {
+            isAtEnd = true;
+        } else {
+            length += read;
+        }
+    }
+
+    // Retourne les octets précédant la position donnée, et garde les
+    // suivants pour le prochain morceau
+    private byte[] cut(int end) {
+        byte[] chunk = Arrays.copyOf(buffer, end);
+        System.arraycopy(buffer, end, buffer, 0, length - end);
+        length -= end;
+        return chunk;
+    }
+}
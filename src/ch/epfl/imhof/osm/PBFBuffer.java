@@ -0,0 +1,295 @@
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Classe représentant un tampon de lecture de messages
+ * encodés au format Protocol Buffers, tel qu'utilisé par
+ * les fichiers OSM PBF. Le tampon lit une portion d'un
+ * tableau d'octets, sans le copier
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class PBFBuffer {
+    /**
+     * Type de champ : entier de taille variable
+     */
+    public static final int VARINT = 0;
+    /**
+     * Type de champ : entier de 64 bits
+     */
+    public static final int FIXED64 = 1;
+    /**
+     * Type de champ : suite d'octets précédée de sa longueur
+     */
+    public static final int LENGTH_DELIMITED = 2;
+    /**
+     * Type de champ : entier de 32 bits
+     */
+    public static final int FIXED32 = 5;
+
+    private final byte[] BYTES;
+    private final int LIMIT;
+    private int position;
+    private int tag;
+
+    /**
+     * Construit un tampon de lecture sur la portion donnée
+     * du tableau d'octets donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param bytes
+     *      le tableau d'octets à lire
+     * @param offset
+     *      la position du premier octet à lire
+     * @param length
+     *      le nombre d'octets à lire
+     */
+    public PBFBuffer(byte[] bytes, int offset, int length) {
+        BYTES = bytes;
+        LIMIT = offset + length;
+        position = offset;
+        tag = 0;
+    }
+
+    /**
+     * Construit un tampon de lecture sur tout le tableau
+     * d'octets donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param bytes
+     *      le tableau d'octets à lire
+     */
+    public PBFBuffer(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Méthode qui lit l'en-tête du champ suivant, et retourne
+     * false si la fin du message est atteinte
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @throws IOException
+     *      si le message est mal formé
+     *
+     * @return (position < LIMIT)
+     *      true si un champ a été lu
+     */
+    public boolean next() throws IOException {
+        if (position >= LIMIT) {
+            return false;
+        }
+        tag = (int)readVarint();
+        return true;
+    }
+
+    /**
+     * Getter du numéro du champ dont l'en-tête a été lu
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return tag >>> 3
+     *      le numéro du champ
+     */
+    public int field() {
+        return tag >>> 3;
+    }
+
+    /**
+     * Getter du type du champ dont l'en-tête a été lu
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return tag & 7
+     *      le type du champ
+     */
+    public int wireType() {
+        return tag & 7;
+    }
+
+    /**
+     * Méthode qui lit un entier de taille variable (types
+     * int32, int64, uint32, uint64 et enum)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @throws IOException
+     *      si le message est mal formé
+     *
+     * @return result
+     *      l'entier lu
+     */
+    public long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0 ; shift < 64 ; shift += 7) {
+            if (position >= LIMIT) {
+                throw new IOException("Truncated protocol buffer.");
+            }
+            byte b = BYTES[position++];
+            result |= (long)(b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint.");
+    }
+
+    /**
+     * Méthode qui lit un entier signé de taille variable
+     * encodé en zigzag (types sint32 et sint64)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @throws IOException
+     *      si le message est mal formé
+     *
+     * @return (value >>> 1) ^ -(value & 1)
+     *      l'entier lu
+     */
+    public long readSignedVarint() throws IOException {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Méthode qui lit un champ délimité par sa longueur et
+     * retourne un tampon de lecture sur son contenu
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @throws IOException
+     *      si le message est mal formé
+     *
+     * @return new PBFBuffer(BYTES, start, length)
+     *      le tampon de lecture du contenu du champ
+     */
+    public PBFBuffer readMessage() throws IOException {
+        int length = readLength();
+        int start = position;
+        position += length;
+        return new PBFBuffer(BYTES, start, length);
+    }
+
+    /**
+     * Méthode qui lit un champ délimité par sa longueur et
+     * en retourne une copie des octets
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @throws IOException
+     *      si le message est mal formé
+     *
+     * @return bytes
+     *      les octets du champ
+     */
+    public byte[] readBytes() throws IOException {
+        int length = readLength();
+        byte[] bytes = new byte[length];
+        System.arraycopy(BYTES, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    /**
+     * Méthode qui lit une chaîne de caractères encodée en UTF-8
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @throws IOException
+     *      si le message est mal formé
+     *
+     * @return new String(BYTES, start, length, UTF_8)
+     *      la chaîne lue
+     */
+    public String readString() throws IOException {
+        int length = readLength();
+        String string = new String(BYTES, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return string;
+    }
+
+    /**
+     * Méthode qui retourne un tampon de lecture sur les valeurs
+     * d'un champ répété : si le champ est compacté, le tampon
+     * contient toutes les valeurs, sinon il ne contient que la
+     * valeur (entière) courante
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @throws IOException
+     *      si le message est mal formé
+     *
+     * @return le tampon de lecture des valeurs
+     */
+    public PBFBuffer readPacked() throws IOException {
+        if (wireType() == LENGTH_DELIMITED) {
+            return readMessage();
+        }
+        int start = position;
+        readVarint();
+        return new PBFBuffer(BYTES, start, position - start);
+    }
+
+    /**
+     * Méthode qui teste s'il reste des octets à lire
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return (position < LIMIT)
+     *      le résultat du test
+     */
+    public boolean hasRemaining() {
+        return position < LIMIT;
+    }
+
+    /**
+     * Méthode qui saute le champ dont l'en-tête a été lu
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @throws IOException
+     *      si le type du champ n'est pas supporté
+     */
+    public void skip() throws IOException {
+        switch (wireType()) {
+            case VARINT: readVarint(); break;
+            case FIXED64: skipBytes(8); break;
+            case LENGTH_DELIMITED: skipBytes(readLength()); break;
+            case FIXED32: skipBytes(4); break;
+            default: throw new IOException("Unsupported protocol buffer wire type: " + wireType());
+        }
+    }
+
+    private void skipBytes(int count) throws IOException {
+        if (count > LIMIT - position) {
+            throw new IOException("Truncated protocol buffer.");
+        }
+        position += count;
+    }
+
+    private int readLength() throws IOException {
+        long length = readVarint();
+        if ((length < 0) || (length > LIMIT - position)) {
+            throw new IOException("Truncated protocol buffer.");
+        }
+        return (int)length;
+    }
+}
@@ -0,0 +1,300 @@
+package ch.epfl.imhof.painting;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import ch.epfl.imhof.Attributed;
+
+/**
+ * Classe représentant un prédicat sur les entités attribuées
+ * qui connaît les clefs d'attributs qu'il consulte. Les
+ * prédicats de Filters sont de ce type, et le restent lorsqu'on
+ * les combine entre eux avec and, or et negate ; cela permet de
+ * déterminer, avant la lecture d'une carte, quels attributs
+ * sont nécessaires pour la dessiner.
+ *
+ * Ces prédicats connaissent aussi leur structure (test d'un
+ * attribut, test de la couche, conjonction, disjonction ou
+ * négation), ce qui permet aux peintres de fusionner les tests
+ * identiques de leurs différents filtres et de les évaluer
+ * ensemble, en ne lisant qu'une fois les attributs d'une entité
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+public final class AttributePredicate implements Predicate<Attributed<?>> {
+    /**
+     * Les différentes structures de prédicats
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    public enum Operator {
+        /** Test de la présence d'un attribut (et de sa valeur) */
+        TAGGED,
+        /** Test de la couche */
+        ON_LAYER,
+        /** Conjonction des opérandes */
+        AND,
+        /** Disjonction des opérandes */
+        OR,
+        /** Négation de l'unique opérande */
+        NOT,
+        /** Prédicat dont la structure n'est pas connue */
+        OTHER
+    }
+
+    private final Predicate<Attributed<?>> PREDICATE;
+    private final Set<String> KEYS;
+    private final boolean REQUIRES_KEY;
+    private final Operator OPERATOR;
+    private final String KEY;
+    private final Set<String> VALUES;
+    private final int LAYER;
+    private final List<AttributePredicate> OPERANDS;
+
+    /**
+     * Construit un prédicat connaissant les clefs qu'il consulte
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param predicate
+     *      le prédicat à évaluer
+     * @param keys
+     *      l'ensemble des clefs consultées par le prédicat
+     * @param requiresKey
+     *      vrai si le prédicat ne peut être satisfait que par
+     *      les entités possédant au moins une de ces clefs
+     */
+    public AttributePredicate(Predicate<Attributed<?>> predicate, Set<String> keys, boolean requiresKey) {
+        this(predicate, keys, requiresKey, Operator.OTHER, null, null, 0);
+    }
+
+    private AttributePredicate(Predicate<Attributed<?>> predicate, Set<String> keys, boolean requiresKey, Operator operator, String key, Set<String> values, int layer, AttributePredicate... operands) {
+        PREDICATE = predicate;
+        KEYS = Collections.unmodifiableSet(new HashSet<String>(keys));
+        REQUIRES_KEY = requiresKey;
+        OPERATOR = operator;
+        KEY = key;
+        VALUES = (values == null) ? null : Collections.unmodifiableSet(new HashSet<String>(values));
+        LAYER = layer;
+        OPERANDS = Collections.unmodifiableList(Arrays.asList(operands));
+    }
+
+    /**
+     * Méthode statique qui construit un prédicat testant la
+     * présence d'un attribut et, si des valeurs sont données,
+     * que sa valeur est l'une d'elles
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param predicate
+     *      le prédicat à évaluer
+     * @param key
+     *      la clef de l'attribut testé
+     * @param values
+     *      les valeurs acceptées, ou null si toutes le sont
+     *
+     * @return new AttributePredicate(...)
+     *      le prédicat
+     */
+    static AttributePredicate tagged(Predicate<Attributed<?>> predicate, String key, Set<String> values) {
+        return new AttributePredicate(predicate, Collections.singleton(key), true, Operator.TAGGED, key, values, 0);
+    }
+
+    /**
+     * Méthode statique qui construit un prédicat testant la
+     * couche d'une entité
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param predicate
+     *      le prédicat à évaluer
+     * @param layer
+     *      la couche acceptée
+     *
+     * @return new AttributePredicate(...)
+     *      le prédicat
+     */
+    static AttributePredicate onLayer(Predicate<Attributed<?>> predicate, int layer) {
+        // Seule la couche 0 contient des entités sans attribut "layer"
+        return new AttributePredicate(predicate, Collections.singleton("layer"), layer != 0, Operator.ON_LAYER, null, null, layer);
+    }
+
+    @Override
+    public boolean test(Attributed<?> attributedEntity) {
+        return PREDICATE.test(attributedEntity);
+    }
+
+    /**
+     * Getter de l'ensemble des clefs consultées par le prédicat
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return KEYS
+     *      l'ensemble non modifiable des clefs
+     */
+    public Set<String> keys() {
+        return KEYS;
+    }
+
+    /**
+     * Méthode qui teste si le prédicat ne peut être satisfait
+     * que par les entités possédant au moins une des clefs
+     * qu'il consulte
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return REQUIRES_KEY
+     *      le résultat du test
+     */
+    public boolean requiresKey() {
+        return REQUIRES_KEY;
+    }
+
+    /**
+     * Getter de la structure du prédicat
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return OPERATOR
+     *      la structure du prédicat
+     */
+    public Operator operator() {
+        return OPERATOR;
+    }
+
+    /**
+     * Getter de la clef de l'attribut testé (TAGGED)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return KEY
+     *      la clef, ou null
+     */
+    public String key() {
+        return KEY;
+    }
+
+    /**
+     * Getter des valeurs acceptées pour l'attribut testé
+     * (TAGGED)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return VALUES
+     *      l'ensemble non modifiable des valeurs, ou null si
+     *      toutes les valeurs sont acceptées
+     */
+    public Set<String> values() {
+        return VALUES;
+    }
+
+    /**
+     * Getter de la couche acceptée (ON_LAYER)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return LAYER
+     *      la couche
+     */
+    public int layer() {
+        return LAYER;
+    }
+
+    /**
+     * Getter des opérandes (AND, OR et NOT)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return OPERANDS
+     *      la liste non modifiable des opérandes, vide pour
+     *      les autres structures
+     */
+    public List<AttributePredicate> operands() {
+        return OPERANDS;
+    }
+
+    @Override
+    public Predicate<Attributed<?>> and(Predicate<? super Attributed<?>> other) {
+        Predicate<Attributed<?>> and = Predicate.super.and(other);
+        if (other instanceof AttributePredicate) {
+            AttributePredicate that = (AttributePredicate)other;
+            return new AttributePredicate(and, union(KEYS, that.KEYS), REQUIRES_KEY || that.REQUIRES_KEY, Operator.AND, null, null, 0, this, that);
+        }
+        return and;
+    }
+
+    @Override
+    public Predicate<Attributed<?>> or(Predicate<? super Attributed<?>> other) {
+        Predicate<Attributed<?>> or = Predicate.super.or(other);
+        if (other instanceof AttributePredicate) {
+            AttributePredicate that = (AttributePredicate)other;
+            return new AttributePredicate(or, union(KEYS, that.KEYS), REQUIRES_KEY && that.REQUIRES_KEY, Operator.OR, null, null, 0, this, that);
+        }
+        return or;
+    }
+
+    @Override
+    public Predicate<Attributed<?>> negate() {
+        return new AttributePredicate(Predicate.super.negate(), KEYS, false, Operator.NOT, null, null, 0, this);
+    }
+
+    /**
+     * Méthode statique qui retourne l'ensemble des clefs
+     * consultées par le prédicat donné, ou null si elles
+     * ne sont pas connues
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param predicate
+     *      le prédicat
+     *
+     * @return keys
+     *      l'ensemble des clefs, ou null
+     */
+    public static Set<String> keysOf(Predicate<? super Attributed<?>> predicate) {
+        return (predicate instanceof AttributePredicate) ? ((AttributePredicate)predicate).KEYS : null;
+    }
+
+    /**
+     * Méthode statique qui teste si le prédicat donné ne peut
+     * être satisfait que par les entités possédant au moins une
+     * des clefs qu'il consulte (faux si elles ne sont pas connues)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param predicate
+     *      le prédicat
+     *
+     * @return le résultat du test
+     */
+    public static boolean requiresKey(Predicate<? super Attributed<?>> predicate) {
+        return (predicate instanceof AttributePredicate) && ((AttributePredicate)predicate).REQUIRES_KEY;
+    }
+
+    static Set<String> union(Set<String> first, Set<String> second) {
+        if ((first == null) || (second == null)) {
+            return null;
+        }
+        Set<String> union = new HashSet<String>(first);
+        union.addAll(second);
+        return union;
+    }
+}
@@ -14,6 +14,8 @@ import ch.epfl.imhof.bonus.LegendElement;
  */
 public final class Color implements LegendElement {
     private final double R, G, B;
+    // La couleur convertie, créée lors de la première conversion
+    private volatile java.awt.Color converted;
     
     /**
      * La couleur rouge pûr
@@ -205,7 +207,9 @@ public final class Color implements LegendElement {
     
     /**
      * Méthode qui convertit une couleur en une couleur
-     * du type prédéfini dans l'API Java
+     * du type prédéfini dans l'API Java. La couleur convertie
+     * n'est créée qu'une fois, les appels suivants retournent
+     * le même objet
      * 
      * @author Raja Soufi (247680)
      * @author Andrey Batasov (250149)
@@ -214,7 +218,12 @@ public final class Color implements LegendElement {
      *      la couleur convertie
      */
     public java.awt.Color convert() {
-        return new java.awt.Color((float)R, (float)G, (float)B);
+        java.awt.Color color = converted;
+        if (color == null) {
+            color = new java.awt.Color((float)R, (float)G, (float)B);
+            converted = color;
+        }
+        return color;
     }
     
     /**
@@ -0,0 +1,201 @@
+package ch.epfl.imhof.painting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+
+/**
+ * Classe représentant un peintre composite (construit avec
+ * when, above et layered) mis à plat en une suite ordonnée de
+ * règles : chaque règle est un peintre de base, précédé des
+ * filtres qui mènent à lui dans l'arbre du peintre composite.
+ *
+ * Au lieu de filtrer (et de copier) la carte à chaque niveau de
+ * l'arbre, chaque élément de la carte est réparti en un seul
+ * parcours de l'arbre entre les règles qui le dessinent, puis
+ * chaque règle dessine ses éléments, dans l'ordre des règles.
+ * Les sous-arbres qui ne dessinent pas le type de l'élément
+ * (polygone ou polyligne) ne sont pas parcourus, et les dessins
+ * par couches utilisent directement la couche de l'élément
+ * précalculée par la carte, sans relire son attribut "layer".
+ * Les filtres de l'arbre sont regroupés dans un FilterPlanner,
+ * de sorte que les attributs d'un élément ne sont lus qu'une
+ * fois et que chaque test n'est évalué qu'une fois par élément.
+ * Le dessin obtenu est exactement celui du peintre composite
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class CompiledPainter implements Painter {
+    // Les couches dessinées par layered, dans l'ordre
+    private static final int MIN_LAYER = -5;
+    private static final int MAX_LAYER = 5;
+
+    private final Node ROOT;
+    // Les peintres de base des règles, dans l'ordre du dessin
+    private final List<Painter> RULES;
+    // Vrai pour les règles dont le peintre n'est pas connu (pas un
+    // KeyedPainter), qui sont appelées même sans élément à dessiner
+    private final List<Boolean> OPAQUE;
+    private final FilterPlanner PLANNER;
+
+    /**
+     * Construit le peintre mis à plat équivalent au peintre
+     * composite donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param painter
+     *      le peintre composite
+     */
+    CompiledPainter(Painter painter) {
+        RULES = new ArrayList<Painter>();
+        OPAQUE = new ArrayList<Boolean>();
+        FilterPlanner.Builder planner = new FilterPlanner.Builder();
+        ROOT = compile(painter, -1, planner);
+        PLANNER = planner.build();
+    }
+
+    @Override
+    public void drawMap(Map map, Canvas canvas) {
+        List<List<Attributed<Polygon>>> polygons = new ArrayList<List<Attributed<Polygon>>>(Collections.nCopies(RULES.size(), null));
+        List<List<Attributed<PolyLine>>> polyLines = new ArrayList<List<Attributed<PolyLine>>>(Collections.nCopies(RULES.size(), null));
+        FilterPlanner.Evaluation evaluation = PLANNER.evaluation();
+        for (int i = 0 ; i < map.polygons().size() ; i++) {
+            Attributed<Polygon> polygon = map.polygons().get(i);
+            int layer = map.polygonLayer(i);
+            evaluation.reset(polygon, layer);
+            classify(ROOT, polygon, layer, KeyedPainter.POLYGONS, evaluation, polygons);
+        }
+        for (int i = 0 ; i < map.polyLines().size() ; i++) {
+            Attributed<PolyLine> polyLine = map.polyLines().get(i);
+            int layer = map.polyLineLayer(i);
+            evaluation.reset(polyLine, layer);
+            classify(ROOT, polyLine, layer, KeyedPainter.POLYLINES, evaluation, polyLines);
+        }
+        List<Attributed<Polygon>> noPolygons = Collections.emptyList();
+        List<Attributed<PolyLine>> noPolyLines = Collections.emptyList();
+        for (int rule = 0 ; rule < RULES.size() ; rule++) {
+            List<Attributed<Polygon>> rulePolygons = polygons.get(rule);
+            List<Attributed<PolyLine>> rulePolyLines = polyLines.get(rule);
+            if ((rulePolygons != null) || (rulePolyLines != null) || OPAQUE.get(rule)) {
+                RULES.get(rule).drawMap(new Map((rulePolyLines == null) ? noPolyLines : rulePolyLines,
+                        (rulePolygons == null) ? noPolygons : rulePolygons), canvas);
+            }
+        }
+    }
+
+    // Ajoute l'élément, de type et de couche donnés, à la liste de chacune
+    // des règles du sous-arbre dont il satisfait tous les filtres
+    private static <T> void classify(Node node, Attributed<T> element, int layer, int type, FilterPlanner.Evaluation evaluation, List<List<Attributed<T>>> buckets) {
+        if (((node.DRAWS & type) == 0) || ((node.CONDITION >= 0) && !evaluation.test(node.CONDITION))) {
+            return;
+        }
+        if (node.CHILDREN == null) {
+            List<Attributed<T>> bucket = buckets.get(node.RULE);
+            if (bucket == null) {
+                bucket = new ArrayList<Attributed<T>>();
+                buckets.set(node.RULE, bucket);
+            }
+            bucket.add(element);
+        } else if (node.LAYERED) {
+            // Équivalent à Filters.onLayer pour chacune des couches
+            if ((layer >= MIN_LAYER) && (layer <= MAX_LAYER)) {
+                classify(node.CHILDREN[layer - MIN_LAYER], element, layer, type, evaluation, buckets);
+            }
+        } else {
+            for (Node child : node.CHILDREN) {
+                classify(child, element, layer, type, evaluation, buckets);
+            }
+        }
+    }
+
+    // Compile le peintre donné en un sous-arbre filtré par la condition
+    // donnée (ou -1), en ajoutant ses règles à la suite de RULES
+    private Node compile(Painter painter, int condition, FilterPlanner.Builder planner) {
+        if (!(painter instanceof KeyedPainter)) {
+            return rule(painter, condition, KeyedPainter.POLYGONS | KeyedPainter.POLYLINES, true);
+        }
+        KeyedPainter keyed = (KeyedPainter)painter;
+        switch (keyed.kind()) {
+        case BASE:
+            return rule(keyed, condition, keyed.draws(), false);
+        case WHEN:
+            Node filtered = compile(keyed.painter(), planner.add(keyed.predicate()), planner);
+            return (condition < 0) ? filtered : new Node(condition, false, filtered);
+        case ABOVE:
+            // Les empilements successifs forment une seule suite
+            List<Node> children = new ArrayList<Node>();
+            addAbove(keyed, children, planner);
+            return new Node(condition, false, children.toArray(new Node[children.size()]));
+        default:
+            // Chaque couche a ses propres règles, dessinées dans l'ordre des couches
+            Node[] layers = new Node[MAX_LAYER - MIN_LAYER + 1];
+            for (int i = 0 ; i < layers.length ; i++) {
+                layers[i] = compile(keyed.painter(), -1, planner);
+            }
+            return new Node(condition, true, layers);
+        }
+    }
+
+    private void addAbove(Painter painter, List<Node> children, FilterPlanner.Builder planner) {
+        if ((painter instanceof KeyedPainter) && (((KeyedPainter)painter).kind() == KeyedPainter.Kind.ABOVE)) {
+            KeyedPainter keyed = (KeyedPainter)painter;
+            addAbove(keyed.first(), children, planner);
+            addAbove(keyed.painter(), children, planner);
+        } else {
+            children.add(compile(painter, -1, planner));
+        }
+    }
+
+    private Node rule(Painter painter, int condition, int draws, boolean opaque) {
+        RULES.add(painter);
+        OPAQUE.add(opaque);
+        return new Node(condition, RULES.size() - 1, draws);
+    }
+
+    /**
+     * Classe représentant un nœud de l'arbre des règles : une
+     * règle, ou une suite de sous-arbres (une par couche pour
+     * un dessin par couches), éventuellement filtrés par une
+     * condition
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    private static final class Node {
+        // L'indice de la condition dans le FilterPlanner, ou -1
+        private final int CONDITION;
+        private final boolean LAYERED;
+        private final Node[] CHILDREN;
+        private final int RULE;
+        // Les types d'éléments dessinés par au moins une règle du sous-arbre
+        private final int DRAWS;
+
+        private Node(int condition, int rule, int draws) {
+            CONDITION = condition;
+            LAYERED = false;
+            CHILDREN = null;
+            RULE = rule;
+            DRAWS = draws;
+        }
+
+        private Node(int condition, boolean layered, Node... children) {
+            CONDITION = condition;
+            LAYERED = layered;
+            CHILDREN = children;
+            RULE = -1;
+            int draws = 0;
+            for (Node child : children) {
+                draws |= child.DRAWS;
+            }
+            DRAWS = draws;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package ch.epfl.imhof.painting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import ch.epfl.imhof.AttributeDictionary;
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.painting.AttributePredicate.Operator;
+
+/**
+ * Classe représentant un ensemble de conditions, obtenues à
+ * partir des filtres d'un peintre, qui sont évaluées ensemble
+ * sur chaque entité.
+ *
+ * Les filtres dont la structure est connue (AttributePredicate)
+ * sont décomposés en conditions : les conjonctions et les
+ * disjonctions imbriquées sont mises à plat, les tests d'un même
+ * attribut y sont fusionnés, les doubles négations supprimées,
+ * et les conditions identiques ne sont gardées qu'une fois.
+ * Lors de l'évaluation, chaque condition est évaluée au plus une
+ * fois par entité, et seulement si elle est nécessaire ; les
+ * attributs sont comparés par leurs indices dans le dictionnaire
+ * des attributs
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class FilterPlanner {
+    private final Condition[] CONDITIONS;
+
+    private FilterPlanner(List<Condition> conditions) {
+        CONDITIONS = conditions.toArray(new Condition[conditions.size()]);
+    }
+
+    /**
+     * Méthode qui retourne le nombre de conditions distinctes
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return CONDITIONS.length
+     *      le nombre de conditions
+     */
+    int size() {
+        return CONDITIONS.length;
+    }
+
+    /**
+     * Méthode qui retourne un nouvel état d'évaluation des
+     * conditions ; un état ne doit être utilisé que par un
+     * seul fil d'exécution à la fois
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return new Evaluation()
+     *      l'état d'évaluation
+     */
+    Evaluation evaluation() {
+        return new Evaluation();
+    }
+
+    /**
+     * Classe représentant l'évaluation des conditions sur une
+     * entité à la fois, qui garde en mémoire les résultats des
+     * conditions déjà évaluées sur l'entité courante
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    final class Evaluation {
+        // Pour chaque condition : la génération (paire, augmentée à
+        // chaque entité) de la dernière évaluation, plus un si la
+        // condition était satisfaite
+        private final int[] RESULTS = new int[CONDITIONS.length];
+        private Attributed<?> element;
+        private int layer;
+        private int generation;
+
+        private Evaluation() {}
+
+        /**
+         * Méthode qui passe à l'entité donnée
+         *
+         * @author Raja Soufi (247680)
+         * @author Andrey Batasov (250149)
+         *
+         * @param element
+         *      l'entité
+         * @param layer
+         *      la couche de l'entité
+         */
+        void reset(Attributed<?> element, int layer) {
+            this.element = element;
+            this.layer = layer;
+            generation += 2;
+        }
+
+        /**
+         * Méthode qui teste si l'entité courante satisfait la
+         * condition d'indice donné
+         *
+         * @author Raja Soufi (247680)
+         * @author Andrey Batasov (250149)
+         *
+         * @param condition
+         *      l'indice de la condition, retourné par le bâtisseur
+         *
+         * @return le résultat du test
+         */
+        boolean test(int condition) {
+            int result = RESULTS[condition];
+            if ((result & ~1) != generation) {
+                result = generation | (evaluate(CONDITIONS[condition]) ? 1 : 0);
+                RESULTS[condition] = result;
+            }
+            return (result & 1) != 0;
+        }
+
+        private boolean evaluate(Condition condition) {
+            switch (condition.OPERATOR) {
+            case TAGGED:
+                if (condition.VALUES == null) {
+                    return element.attributes().contains(condition.KEY);
+                }
+                int value = element.attributes().valueIndex(condition.KEY);
+                return (value >= 0) && (Arrays.binarySearch(condition.VALUES, value) >= 0);
+            case ON_LAYER:
+                return layer == condition.KEY;
+            case AND:
+                for (int operand : condition.OPERANDS) {
+                    if (!test(operand)) {
+                        return false;
+                    }
+                }
+                return true;
+            case OR:
+                for (int operand : condition.OPERANDS) {
+                    if (test(operand)) {
+                        return true;
+                    }
+                }
+                return false;
+            case NOT:
+                return !test(condition.OPERANDS[0]);
+            default:
+                return condition.PREDICATE.test(element);
+            }
+        }
+    }
+
+    /**
+     * Classe représentant une condition : un test d'attribut
+     * (clef et valeurs acceptées), un test de couche (la couche
+     * est alors dans KEY), une combinaison d'autres conditions ou
+     * un prédicat de structure inconnue
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    private static final class Condition {
+        private final Operator OPERATOR;
+        private final int KEY;
+        private final int[] VALUES;
+        private final int[] OPERANDS;
+        private final Predicate<? super Attributed<?>> PREDICATE;
+
+        private Condition(Operator operator, int key, int[] values, int[] operands, Predicate<? super Attributed<?>> predicate) {
+            OPERATOR = operator;
+            KEY = key;
+            VALUES = values;
+            OPERANDS = operands;
+            PREDICATE = predicate;
+        }
+
+        // Deux conditions de même signature sont équivalentes
+        private String signature() {
+            return OPERATOR + ":" + KEY + ":" + Arrays.toString(VALUES) + ":" + Arrays.toString(OPERANDS);
+        }
+    }
+
+    /**
+     * Bâtisseur de la classe FilterPlanner, qui décompose des
+     * filtres en conditions
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    static final class Builder {
+        private final List<Condition> CONDITIONS = new ArrayList<Condition>();
+        private final Map<String, Integer> INDICES = new HashMap<String, Integer>();
+        private final Map<Predicate<? super Attributed<?>>, Integer> OPAQUE_INDICES = new IdentityHashMap<Predicate<? super Attributed<?>>, Integer>();
+
+        /**
+         * Méthode qui ajoute les conditions d'un filtre au
+         * bâtisseur
+         *
+         * @author Raja Soufi (247680)
+         * @author Andrey Batasov (250149)
+         *
+         * @param predicate
+         *      le filtre
+         *
+         * @return index
+         *      l'indice de la condition équivalente au filtre
+         */
+        int add(Predicate<? super Attributed<?>> predicate) {
+            if (!(predicate instanceof AttributePredicate)) {
+                return opaque(predicate);
+            }
+            AttributePredicate attributePredicate = (AttributePredicate)predicate;
+            switch (attributePredicate.operator()) {
+            case TAGGED:
+                return tagged(AttributeDictionary.index(attributePredicate.key()), valueIndices(attributePredicate.values()));
+            case ON_LAYER:
+                return add(new Condition(Operator.ON_LAYER, attributePredicate.layer(), null, null, null));
+            case NOT:
+                AttributePredicate operand = attributePredicate.operands().get(0);
+                if (operand.operator() == Operator.NOT) {
+                    return add(operand.operands().get(0));
+                }
+                return add(new Condition(Operator.NOT, 0, null, new int[] {add(operand)}, null));
+            case AND:
+            case OR:
+                return combination(attributePredicate);
+            default:
+                return opaque(attributePredicate);
+            }
+        }
+
+        /**
+         * Méthode qui construit l'ensemble des conditions ajoutées
+         *
+         * @author Raja Soufi (247680)
+         * @author Andrey Batasov (250149)
+         *
+         * @return new FilterPlanner(CONDITIONS)
+         *      l'ensemble des conditions
+         */
+        FilterPlanner build() {
+            return new FilterPlanner(CONDITIONS);
+        }
+
+        private int opaque(Predicate<? super Attributed<?>> predicate) {
+            Integer index = OPAQUE_INDICES.get(predicate);
+            if (index == null) {
+                CONDITIONS.add(new Condition(Operator.OTHER, 0, null, null, predicate));
+                index = CONDITIONS.size() - 1;
+                OPAQUE_INDICES.put(predicate, index);
+            }
+            return index;
+        }
+
+        private int tagged(int key, int[] values) {
+            return add(new Condition(Operator.TAGGED, key, values, null, null));
+        }
+
+        private int add(Condition condition) {
+            String signature = condition.signature();
+            Integer index = INDICES.get(signature);
+            if (index == null) {
+                CONDITIONS.add(condition);
+                index = CONDITIONS.size() - 1;
+                INDICES.put(signature, index);
+            }
+            return index;
+        }
+
+        // Met à plat la combinaison, fusionne les tests d'un même
+        // attribut (union des valeurs pour OR, intersection pour AND)
+        // et supprime les opérandes identiques
+        private int combination(AttributePredicate predicate) {
+            Operator operator = predicate.operator();
+            List<AttributePredicate> flattened = new ArrayList<AttributePredicate>();
+            flatten(predicate, operator, flattened);
+            // Pour chaque opérande : l'indice de sa condition, ou pour un
+            // test d'attribut, l'opposé (moins un) de l'indice de sa clef
+            List<Integer> operands = new ArrayList<Integer>();
+            Map<Integer, int[]> taggedValues = new HashMap<Integer, int[]>();
+            Set<Integer> anyValue = new LinkedHashSet<Integer>();
+            for (AttributePredicate operand : flattened) {
+                if (operand.operator() == Operator.TAGGED) {
+                    int key = AttributeDictionary.index(operand.key());
+                    int[] values = valueIndices(operand.values());
+                    if (!taggedValues.containsKey(key) && !anyValue.contains(key)) {
+                        operands.add(-key - 1);
+                    } else {
+                        int[] previous = anyValue.contains(key) ? null : taggedValues.get(key);
+                        values = (operator == Operator.OR) ? union(previous, values) : intersection(previous, values);
+                    }
+                    if (values == null) {
+                        anyValue.add(key);
+                        taggedValues.remove(key);
+                    } else {
+                        anyValue.remove(key);
+                        taggedValues.put(key, values);
+                    }
+                } else {
+                    operands.add(add(operand));
+                }
+            }
+            Set<Integer> indices = new LinkedHashSet<Integer>();
+            for (int operand : operands) {
+                if (operand < 0) {
+                    int key = -operand - 1;
+                    indices.add(tagged(key, anyValue.contains(key) ? null : taggedValues.get(key)));
+                } else {
+                    indices.add(operand);
+                }
+            }
+            if (indices.size() == 1) {
+                return indices.iterator().next();
+            }
+            int[] array = new int[indices.size()];
+            int i = 0;
+            for (int index : indices) {
+                array[i++] = index;
+            }
+            return add(new Condition(operator, 0, null, array, null));
+        }
+
+        private static void flatten(AttributePredicate predicate, Operator operator, List<AttributePredicate> flattened) {
+            if (predicate.operator() == operator) {
+                for (AttributePredicate operand : predicate.operands()) {
+                    flatten(operand, operator, flattened);
+                }
+            } else {
+                flattened.add(predicate);
+            }
+        }
+
+        // Les indices triés des valeurs, ou null si toutes sont acceptées
+        private static int[] valueIndices(Set<String> values) {
+            if (values == null) {
+                return null;
+            }
+            int[] indices = new int[values.size()];
+            int i = 0;
+            for (String value : values) {
+                indices[i++] = AttributeDictionary.index(value);
+            }
+            Arrays.sort(indices);
+            return indices;
+        }
+
+        private static int[] union(int[] first, int[] second) {
+            if ((first == null) || (second == null)) {
+                return null;
+            }
+            int[] union = Arrays.copyOf(first, first.length + second.length);
+            System.arraycopy(second, 0, union, first.length, second.length);
+            return Arrays.stream(union).sorted().distinct().toArray();
+        }
+
+        private static int[] intersection(int[] first, int[] second) {
+            if (first == null) {
+                return second;
+            }
+            if (second == null) {
+                return first;
+            }
+            return Arrays.stream(first).filter(value -> Arrays.binarySearch(second, value) >= 0).toArray();
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package ch.epfl.imhof.painting;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.function.Predicate;
 
+import ch.epfl.imhof.AttributeDictionary;
 import ch.epfl.imhof.Attributed;
 
 /**
@@ -33,7 +34,8 @@ public final class Filters {
      *      le prédicat construit
      */
     public static Predicate<Attributed<?>> tagged(String attribute) {
-        return attributedEntity -> attributedEntity.hasAttribute(attribute);
+        int key = AttributeDictionary.index(attribute);
+        return AttributePredicate.tagged(attributedEntity -> attributedEntity.attributes().contains(key), attribute, null);
     }
     
     /**
@@ -55,11 +57,26 @@ public final class Filters {
      *      le prédicat construit
      */
     public static Predicate<Attributed<?>> tagged(String attribute, String... values) {
-        List<String> allowedValues = new ArrayList<>();
-        for (String value : values) {
-            allowedValues.add(value);
+        // Les clefs et valeurs sont comparées par leurs indices
+        // dans le dictionnaire des attributs, qui doit donc garder
+        // les valeurs de cette clef
+        AttributeDictionary.internValuesOf(attribute);
+        int key = AttributeDictionary.index(attribute);
+        int[] allowedValues = new int[values.length];
+        for (int i = 0 ; i < values.length ; i++) {
+            allowedValues[i] = AttributeDictionary.index(values[i]);
         }
-        return attributedEntity -> (attributedEntity.hasAttribute(attribute) && (allowedValues.contains(attributedEntity.attributeValue(attribute))));
+        return AttributePredicate.tagged(attributedEntity -> {
+            int value = attributedEntity.attributes().valueIndex(key);
+            if (value >= 0) {
+                for (int allowedValue : allowedValues) {
+                    if (value == allowedValue) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }, attribute, new HashSet<String>(Arrays.asList(values)));
     }
     
     /**
@@ -84,6 +101,6 @@ public final class Filters {
         if ((layerNo < -5) || (layerNo > 5)) {
             throw new IllegalArgumentException("The layer you have entered is out of range!");
         }
-        return attributedEntity -> (attributedEntity.attributeValue("layer", 0) == layerNo);
+        return AttributePredicate.onLayer(attributedEntity -> (attributedEntity.attributeValue("layer", 0) == layerNo), layerNo);
     }
 }
@@ -10,24 +10,50 @@ import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Function;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import ch.epfl.imhof.Map;
 import ch.epfl.imhof.geometry.ClosedPolyLine;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.geometry.RectangleClipper;
 
 /**
  * Classe représenant une toile sur laquelle on
- * peut dessiner les éléments d'une carte
+ * peut dessiner les éléments d'une carte. Les éléments
+ * sont découpés selon la zone couverte par la toile (agrandie
+ * d'une marge) avant d'être dessinés : ceux qui en sont
+ * entièrement à l'extérieur sont ignorés. Une carte peut aussi
+ * être dessinée en parallèle, par bandes horizontales
  * 
  * @author Raja Soufi (247680)
  * @author Andrey Batasov (250149)
  */
 public final class Java2DCanvas implements Canvas {
-    private final Function<Point, Point> COORDINATE_CHANGE;
+    // Le nombre de bandes par fil d'exécution (pour équilibrer les
+    // bandes chargées et les autres), et leur hauteur minimale en pixels
+    private static final int BANDS_PER_THREAD = 4;
+    private static final int MIN_BAND_HEIGHT = 32;
+
+    // Le changement de repère (aligné sur les axes) du plan vers la toile
+    private final double SCALE_X;
+    private final double OFFSET_X;
+    private final double SCALE_Y;
+    private final double OFFSET_Y;
+    // La zone couverte par la toile et la taille d'un pixel, dans le plan
+    private final RectangleClipper CLIPPER;
+    private final double PIXEL_SIZE;
+    // Le nombre de points (unité de la toile) par pixel
+    private final double POINT_SIZE;
     private final BufferedImage IMAGE;
     private final Graphics2D CONTEXT;
+    // La couleur et le trait du contexte, qui ne sont changés (ce qui
+    // oblige Java2D à revalider le contexte) que s'ils sont différents
+    private java.awt.Color color;
+    private BasicStroke stroke;
     
     /**
      * Construit une toile avec les paramètres donnés
@@ -56,16 +82,124 @@ public final class Java2DCanvas implements Canvas {
         if (res <= 0) {
             throw new IllegalArgumentException("The entered resolution must be strictly positive!");
         } else {
-            COORDINATE_CHANGE = Point.alignedCoordinateChange(bl, new Point(0, height * 72 / res), tr, new Point(width * 72 / res, 0));
+            // Mêmes coefficients que Point.alignedCoordinateChange(bl, (0, h), tr, (w, 0))
+            if ((bl.x() == tr.x()) || (bl.y() == tr.y())) {
+                throw new IllegalArgumentException("The bottom left and top right corners must differ in both coordinates!");
+            }
+            double canvasWidth = width * 72 / res;
+            double canvasHeight = height * 72 / res;
+            SCALE_X = canvasWidth / (tr.x() - bl.x());
+            OFFSET_X = 0 - bl.x() * SCALE_X;
+            SCALE_Y = (0 - canvasHeight) / (tr.y() - bl.y());
+            OFFSET_Y = canvasHeight - bl.y() * SCALE_Y;
+            CLIPPER = new RectangleClipper(new Point(Math.min(bl.x(), tr.x()), Math.min(bl.y(), tr.y())), new Point(Math.max(bl.x(), tr.x()), Math.max(bl.y(), tr.y())));
+            PIXEL_SIZE = Math.max(Math.abs(tr.x() - bl.x()) / width, Math.abs(tr.y() - bl.y()) / height);
+            POINT_SIZE = 72 / res;
             IMAGE = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
             CONTEXT = IMAGE.createGraphics();
             CONTEXT.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
-            CONTEXT.setColor(color.convert());
+            this.color = color.convert();
+            CONTEXT.setColor(this.color);
             CONTEXT.fillRect(0, 0, width, height);
             CONTEXT.scale(res / 72, res / 72);
         }
     }
     
+    // Construit une toile qui dessine sur les lignes de pixels top
+    // (inclus) à bottom (exclu) de l'image de la toile donnée. Le
+    // contexte graphique reprend le changement de repère de celui de
+    // la toile donnée et est seulement restreint à ces lignes, sans
+    // translation : les coordonnées des dessins dans l'image, et donc
+    // leurs pixels (anticrénelage compris), sont les mêmes que sur la
+    // toile entière. Chaque bande a son propre contexte (donc son propre
+    // état) ; les contextes de bandes différentes ne dessinent que dans
+    // des lignes disjointes du tableau d'entiers de l'image, aucun pixel
+    // n'est donc lu ou écrit par deux bandes
+    private Java2DCanvas(Java2DCanvas canvas, int top, int bottom) {
+        SCALE_X = canvas.SCALE_X;
+        OFFSET_X = canvas.OFFSET_X;
+        SCALE_Y = canvas.SCALE_Y;
+        OFFSET_Y = canvas.OFFSET_Y;
+        PIXEL_SIZE = canvas.PIXEL_SIZE;
+        POINT_SIZE = canvas.POINT_SIZE;
+        IMAGE = canvas.IMAGE;
+        Point corner = canvas.point(0, top), opposite = canvas.point(IMAGE.getWidth(), bottom);
+        CLIPPER = new RectangleClipper(new Point(Math.min(corner.x(), opposite.x()), Math.min(corner.y(), opposite.y())),
+                new Point(Math.max(corner.x(), opposite.x()), Math.max(corner.y(), opposite.y())));
+        CONTEXT = IMAGE.createGraphics();
+        CONTEXT.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+        CONTEXT.clipRect(0, top, IMAGE.getWidth(), bottom - top);
+        CONTEXT.transform(canvas.CONTEXT.getTransform());
+    }
+    
+    /**
+     * Méthode qui dessine la carte passée en paramètre sur la
+     * toile avec le peintre passé en paramètre, en parallèle sur
+     * le pool passé en paramètre : l'image est découpée en bandes
+     * horizontales, et chaque bande est dessinée par le peintre
+     * sur sa propre toile, avec les seuls éléments de la carte qui
+     * peuvent la toucher. L'image obtenue est identique, pixel par
+     * pixel, à celle que dessine painter.drawMap(map, this) ; le
+     * peintre doit pouvoir dessiner plusieurs cartes à la fois
+     * 
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @param painter
+     *      Le peintre à utiliser
+     * @param map
+     *      La carte à dessiner
+     * @param pool
+     *      Le pool sur lequel les bandes sont dessinées
+     */
+    public void drawMap(Painter painter, Map map, ForkJoinPool pool) {
+        int height = IMAGE.getHeight();
+        int bands = Math.min(pool.getParallelism() * BANDS_PER_THREAD, height / MIN_BAND_HEIGHT);
+        if ((pool.getParallelism() == 1) || (bands <= 1)) {
+            painter.drawMap(map, this);
+            return;
+        }
+        // Sans connaître les styles de lignes du peintre, chaque bande
+        // reçoit toute la carte (et en ignore ce qui ne la touche pas)
+        Set<LineStyle> styles = KeyedPainter.lineStyles(painter);
+        double reach = 0;
+        if (styles != null) {
+            for (LineStyle style : styles) {
+                reach = Math.max(reach, reach(style.convert()));
+            }
+        }
+        double margin = reach / Math.abs(SCALE_X) + 2 * PIXEL_SIZE;
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+        for (int band = 0 ; band < bands ; band++) {
+            Java2DCanvas canvas = new Java2DCanvas(this, (int)((long)height * band / bands), (int)((long)height * (band + 1) / bands));
+            tasks.add(pool.submit(() -> {
+                Map bandMap = map;
+                if (styles != null) {
+                    RectangleClipper clipper = canvas.CLIPPER.expandedBy(margin);
+                    bandMap = map.within(clipper.bottomLeft(), clipper.topRight());
+                }
+                painter.drawMap(bandMap, canvas);
+                canvas.CONTEXT.dispose();
+            }));
+        }
+        // Attendre chaque bande rend ses dessins visibles à qui lit l'image
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+    
+    // Le point du plan correspondant au coin du pixel donné
+    private Point point(int x, int y) {
+        return new Point((x * POINT_SIZE - OFFSET_X) / SCALE_X, (y * POINT_SIZE - OFFSET_Y) / SCALE_Y);
+    }
+    
+    // La distance (dans le repère de la toile) jusqu'à laquelle un trait
+    // peut s'étendre autour de sa ligne : les coins en onglet peuvent
+    // dépasser de miterLimit demi-largeurs
+    private static double reach(BasicStroke stroke) {
+        return stroke.getLineWidth() / 2 * ((stroke.getLineJoin() == BasicStroke.JOIN_MITER) ? stroke.getMiterLimit() : 1.5);
+    }
+    
     /**
      * Méthode qui dessine la polyligne passée en paramètre
      * avec le style de ligne passé en paramètre sur la toile
@@ -80,18 +214,36 @@ public final class Java2DCanvas implements Canvas {
      */
     @Override
     public void drawPolyLine(PolyLine polyLine, LineStyle style) {
-        List<Point> list = new ArrayList<Point>(polyLine.points());
-        Path2D path = new Path2D.Double();
-        list.replaceAll(p -> COORDINATE_CHANGE.apply(p));
-        path.moveTo(list.get(0).x(), list.get(0).y());
-        for (int i = 1 ; i < list.size() ; i++) {
-            path.lineTo(list.get(i).x(), list.get(i).y());
+        BasicStroke stroke = style.convert();
+        RectangleClipper clipper = CLIPPER.expandedBy(reach(stroke) / Math.abs(SCALE_X) + 2 * PIXEL_SIZE);
+        Path2D path;
+        if (style.dash() != null) {
+            // Découper une ligne traitillée décalerait ses traits : elle est dessinée entière
+            if (clipper.clipLine(polyLine).isEmpty()) {
+                return;
+            }
+            path = path(polyLine);
+            if (polyLine.isClosed()) {
+                path.closePath();
+            }
+        } else {
+            List<PolyLine> pieces = clipper.clipLine(polyLine);
+            if (pieces.isEmpty()) {
+                return;
+            }
+            path = path(pieces.get(0));
+            if (pieces.get(0).isClosed()) {
+                path.closePath();
+            }
+            for (int i = 1 ; i < pieces.size() ; i++) {
+                path.append(path(pieces.get(i)), false);
+            }
         }
-        if (polyLine.isClosed()) {
-            path.closePath();
+        setColor(style.color());
+        if (stroke != this.stroke) {
+            this.stroke = stroke;
+            CONTEXT.setStroke(stroke);
         }
-        CONTEXT.setColor(style.color().convert());
-        CONTEXT.setStroke(new BasicStroke(style.width(), style.cap().ordinal(), style.join().ordinal(), 10.0f, style.dash(), 0f));
         CONTEXT.draw(path);
     }
     
@@ -109,30 +261,41 @@ public final class Java2DCanvas implements Canvas {
      */
     @Override
     public void drawPolygon(Polygon polygon, Color color) {
-        List<Point> list = new ArrayList<Point>(polygon.shell().points());
-        Path2D path = new Path2D.Double();
-        list.replaceAll(p -> COORDINATE_CHANGE.apply(p));
-        path.moveTo(list.get(0).x(), list.get(0).y());
-        for (int i = 1 ; i < list.size() ; i++) {
-            path.lineTo(list.get(i).x(), list.get(i).y());
+        polygon = CLIPPER.expandedBy(2 * PIXEL_SIZE).clipPolygon(polygon);
+        if (polygon == null) {
+            return;
         }
+        Path2D path = path(polygon.shell());
         path.closePath();
         Area area = new Area(path);
         for (ClosedPolyLine polyLine : polygon.holes()) {
-            list = new ArrayList<Point>(polyLine.points());
-            path = new Path2D.Double();
-            list.replaceAll(p -> COORDINATE_CHANGE.apply(p));
-            path.moveTo(list.get(0).x(), list.get(0).y());
-            for (int i = 1 ; i < list.size() ; i++) {
-                path.lineTo(list.get(i).x(), list.get(i).y());
-            }
+            path = path(polyLine);
             path.closePath();
             area.subtract(new Area(path));
         }
-        CONTEXT.setColor(color.convert());
+        setColor(color);
         CONTEXT.fill(area);
     }
     
+    private void setColor(Color color) {
+        java.awt.Color converted = color.convert();
+        if (converted != this.color) {
+            this.color = converted;
+            CONTEXT.setColor(converted);
+        }
+    }
+    
+    // Construit le chemin (non fermé) passant par les points de la
+    // polyligne, exprimés dans le repère de la toile
+    private Path2D path(PolyLine polyLine) {
+        Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, polyLine.pointsCount());
+        path.moveTo(SCALE_X * polyLine.x(0) + OFFSET_X, SCALE_Y * polyLine.y(0) + OFFSET_Y);
+        for (int i = 1 ; i < polyLine.pointsCount() ; i++) {
+            path.lineTo(SCALE_X * polyLine.x(i) + OFFSET_X, SCALE_Y * polyLine.y(i) + OFFSET_Y);
+        }
+        return path;
+    }
+    
     /**
      * Getter de la toile sous forme d'image du type
      * BufferedImage, prédéfini dans l'API Java
@@ -0,0 +1,311 @@
+package ch.epfl.imhof.painting;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import ch.epfl.imhof.Attributed;
+import ch.epfl.imhof.Map;
+
+/**
+ * Classe représentant un peintre construit par les méthodes de
+ * Painter, qui connaît sa propre structure (peintre de base,
+ * filtrage, empilement ou dessin par couches) ainsi que les
+ * clefs d'attributs qu'il consulte pour décider quoi dessiner,
+ * tant que les prédicats utilisés sont ceux de Filters.
+ *
+ * Les peintres composites ne filtrent pas la carte à chaque
+ * niveau : ils sont compilés (une seule fois) en un
+ * CompiledPainter, qui répartit chaque élément en un seul
+ * parcours entre les peintres de base qui le dessinent
+ *
+ * @author Raja Soufi (247680)
+ * @author Andrey Batasov (250149)
+ */
+final class KeyedPainter implements Painter {
+    /**
+     * Les différentes structures de peintres
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     */
+    enum Kind {
+        BASE, WHEN, ABOVE, LAYERED
+    }
+
+    /** Indicateur : le peintre de base dessine des polygones */
+    static final int POLYGONS = 1;
+    /** Indicateur : le peintre de base dessine des polylignes */
+    static final int POLYLINES = 2;
+
+    private final Kind KIND;
+    // Le peintre de base qui dessine effectivement la carte (BASE),
+    // le peintre filtré ou dessiné par couches (WHEN, LAYERED),
+    // ou le peintre du dessus (ABOVE)
+    private final Painter PAINTER;
+    // Le peintre du dessous (ABOVE)
+    private final Painter FIRST;
+    private final Predicate<Attributed<?>> PREDICATE;
+    private final int DRAWS;
+    // Le style des lignes tracées par le peintre de base, ou null
+    private final LineStyle STYLE;
+    private final Set<String> READ_KEYS;
+    private final boolean DRAWS_ONLY_TAGGED;
+    private volatile CompiledPainter compiled;
+
+    private KeyedPainter(Kind kind, Painter painter, Painter first, Predicate<Attributed<?>> predicate, int draws, LineStyle style, Set<String> readKeys, boolean drawsOnlyTagged) {
+        KIND = kind;
+        PAINTER = painter;
+        FIRST = first;
+        PREDICATE = predicate;
+        DRAWS = draws;
+        STYLE = style;
+        READ_KEYS = (readKeys == null) ? null : Collections.unmodifiableSet(readKeys);
+        DRAWS_ONLY_TAGGED = drawsOnlyTagged && (readKeys != null);
+    }
+
+    /**
+     * Méthode statique qui construit un peintre de base, qui
+     * dessine tous les éléments de la carte qu'il reçoit sans
+     * consulter leurs attributs
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param painter
+     *      le peintre qui dessine effectivement la carte
+     * @param draws
+     *      les éléments que le peintre dessine (POLYGONS,
+     *      POLYLINES ou les deux)
+     * @param style
+     *      le style des lignes que le peintre trace, ou null
+     *      s'il n'en trace pas
+     *
+     * @return new KeyedPainter(...)
+     *      le peintre de base
+     */
+    static KeyedPainter base(Painter painter, int draws, LineStyle style) {
+        return new KeyedPainter(Kind.BASE, painter, null, null, draws, style, Collections.emptySet(), false);
+    }
+
+    /**
+     * Méthode statique qui construit un peintre qui ne dessine,
+     * avec le peintre donné, que les éléments satisfaisant le
+     * prédicat donné
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param painter
+     *      le peintre filtré
+     * @param predicate
+     *      le prédicat
+     *
+     * @return new KeyedPainter(...)
+     *      le peintre filtré
+     */
+    static KeyedPainter when(Painter painter, Predicate<Attributed<?>> predicate) {
+        return new KeyedPainter(Kind.WHEN, painter, null, predicate, 0, null,
+                AttributePredicate.union(readKeys(painter), AttributePredicate.keysOf(predicate)),
+                AttributePredicate.requiresKey(predicate) || drawsOnlyTagged(painter));
+    }
+
+    /**
+     * Méthode statique qui construit un peintre qui dessine
+     * d'abord avec le premier peintre donné, puis avec le second
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param first
+     *      le peintre du dessous
+     * @param second
+     *      le peintre du dessus
+     *
+     * @return new KeyedPainter(...)
+     *      le peintre composite
+     */
+    static KeyedPainter above(Painter first, Painter second) {
+        return new KeyedPainter(Kind.ABOVE, second, first, null, 0, null,
+                AttributePredicate.union(readKeys(second), readKeys(first)),
+                drawsOnlyTagged(second) && drawsOnlyTagged(first));
+    }
+
+    /**
+     * Méthode statique qui construit un peintre qui dessine avec
+     * le peintre donné la carte par couches, de la couche -5 à
+     * la couche +5
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param painter
+     *      le peintre dessiné par couches
+     *
+     * @return new KeyedPainter(...)
+     *      le peintre par couches
+     */
+    static KeyedPainter layered(Painter painter) {
+        return new KeyedPainter(Kind.LAYERED, painter, null, null, 0, null,
+                AttributePredicate.union(readKeys(painter), Collections.singleton("layer")), drawsOnlyTagged(painter));
+    }
+
+    @Override
+    public void drawMap(Map map, Canvas canvas) {
+        if (KIND == Kind.BASE) {
+            PAINTER.drawMap(map, canvas);
+        } else {
+            if (compiled == null) {
+                compiled = new CompiledPainter(this);
+            }
+            compiled.drawMap(map, canvas);
+        }
+    }
+
+    @Override
+    public Set<String> attributeKeys() {
+        return DRAWS_ONLY_TAGGED ? READ_KEYS : null;
+    }
+
+    /**
+     * Getter de la structure du peintre
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return KIND
+     *      la structure du peintre
+     */
+    Kind kind() {
+        return KIND;
+    }
+
+    /**
+     * Getter du peintre de base (BASE), du peintre filtré ou
+     * dessiné par couches (WHEN, LAYERED), ou du peintre du
+     * dessus (ABOVE)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return PAINTER
+     *      le peintre
+     */
+    Painter painter() {
+        return PAINTER;
+    }
+
+    /**
+     * Getter du peintre du dessous (ABOVE)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return FIRST
+     *      le peintre du dessous, ou null
+     */
+    Painter first() {
+        return FIRST;
+    }
+
+    /**
+     * Getter du prédicat de filtrage (WHEN)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return PREDICATE
+     *      le prédicat, ou null
+     */
+    Predicate<Attributed<?>> predicate() {
+        return PREDICATE;
+    }
+
+    /**
+     * Getter des éléments dessinés par le peintre de base (BASE)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @return DRAWS
+     *      une combinaison de POLYGONS et POLYLINES
+     */
+    int draws() {
+        return DRAWS;
+    }
+
+    /**
+     * Méthode statique qui retourne l'ensemble des styles des
+     * lignes que le peintre donné peut tracer, ou null s'il
+     * n'est pas connu (c-à-d si le peintre contient un peintre
+     * qui n'a pas été construit par les méthodes de Painter)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param painter
+     *      le peintre
+     *
+     * @return styles
+     *      l'ensemble des styles, ou null
+     */
+    static Set<LineStyle> lineStyles(Painter painter) {
+        Set<LineStyle> styles = new HashSet<LineStyle>();
+        return addLineStyles(painter, styles) ? styles : null;
+    }
+
+    private static boolean addLineStyles(Painter painter, Set<LineStyle> styles) {
+        if (!(painter instanceof KeyedPainter)) {
+            return false;
+        }
+        KeyedPainter keyed = (KeyedPainter)painter;
+        switch (keyed.KIND) {
+        case BASE:
+            if (keyed.STYLE != null) {
+                styles.add(keyed.STYLE);
+            }
+            return true;
+        case ABOVE:
+            return addLineStyles(keyed.FIRST, styles) && addLineStyles(keyed.PAINTER, styles);
+        default:
+            return addLineStyles(keyed.PAINTER, styles);
+        }
+    }
+
+    /**
+     * Méthode statique qui retourne l'ensemble des clefs
+     * consultées par le peintre donné, ou null si elles ne
+     * sont pas connues
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param painter
+     *      le peintre
+     *
+     * @return READ_KEYS
+     *      l'ensemble des clefs, ou null
+     */
+    static Set<String> readKeys(Painter painter) {
+        return (painter instanceof KeyedPainter) ? ((KeyedPainter)painter).READ_KEYS : null;
+    }
+
+    /**
+     * Méthode statique qui teste si le peintre donné ne
+     * dessine que des éléments possédant au moins une des
+     * clefs qu'il consulte
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param painter
+     *      le peintre
+     *
+     * @return DRAWS_ONLY_TAGGED
+     *      le résultat du test
+     */
+    static boolean drawsOnlyTagged(Painter painter) {
+        return (painter instanceof KeyedPainter) && ((KeyedPainter)painter).DRAWS_ONLY_TAGGED;
+    }
+}
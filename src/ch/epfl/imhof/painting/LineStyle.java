@@ -1,5 +1,7 @@
 package ch.epfl.imhof.painting;
 
+import java.awt.BasicStroke;
+
 import ch.epfl.imhof.bonus.LegendElement;
 
 /**
@@ -17,6 +19,7 @@ public final class LineStyle implements LegendElement {
     private final LineJoin JOIN;
     private final float WIDTH;
     private final float[] DASH;
+    private final BasicStroke STROKE;
     
     /**
      * Construit un style de ligne avec les paramètres donnés
@@ -63,6 +66,8 @@ public final class LineStyle implements LegendElement {
                 DASH[i] = dash[i];
             }
         }
+        // Les constantes de BasicStroke sont celles d'indice ordinal()
+        STROKE = new BasicStroke(WIDTH, CAP.ordinal(), JOIN.ordinal(), 10.0f, DASH, 0f);
     }
     
     /**
@@ -147,6 +152,21 @@ public final class LineStyle implements LegendElement {
         return DASH;
     }
     
+    /**
+     * Méthode qui convertit le style en un trait du type
+     * prédéfini dans l'API Java. Le trait n'est créé qu'une
+     * fois, à la construction du style
+     * 
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @return STROKE
+     *      le trait correspondant au style
+     */
+    public BasicStroke convert() {
+        return STROKE;
+    }
+    
     /**
      * Méthode qui retourne un style de ligne avec les mêmes
      * propriétés que celui auquel on applique la méthode, sauf
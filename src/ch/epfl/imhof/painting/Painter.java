@@ -1,7 +1,6 @@
 package ch.epfl.imhof.painting;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Set;
 import java.util.function.Predicate;
 
 import ch.epfl.imhof.Map;
@@ -11,7 +10,6 @@ import ch.epfl.imhof.geometry.Polygon;
 import ch.epfl.imhof.geometry.PolyLine;
 import ch.epfl.imhof.painting.LineStyle.LineCap;
 import ch.epfl.imhof.painting.LineStyle.LineJoin;
-import ch.epfl.imhof.painting.Filters;
 
 /**
  * Interface fonctionnelle qui représente un peintre
@@ -34,6 +32,27 @@ public interface Painter {
      *      La toile à dessiner dessus
      */
     public void drawMap(Map map, Canvas canvas);
+
+    /**
+     * Méthode par défaut qui retourne l'ensemble des clefs
+     * d'attributs dont le peintre a besoin, c-à-d les clefs
+     * consultées pour décider quoi dessiner, si le peintre ne
+     * dessine que des éléments possédant au moins une de ces
+     * clefs ; les attributs ayant d'autres clefs peuvent alors
+     * être ignorés lors de la lecture de la carte sans changer
+     * le dessin. Retourne null si cet ensemble n'est pas connu
+     * (par défaut), ou si le peintre peut dessiner des éléments
+     * ne possédant aucune de ces clefs
+     * 
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     * 
+     * @return null
+     *      l'ensemble des clefs, ou null
+     */
+    public default Set<String> attributeKeys() {
+        return null;
+    }
     
     /**
      * Méthode statique qui retourne un peintre (c-à-d une
@@ -52,11 +71,11 @@ public interface Painter {
      *      Le peintre dessinant les polygones
      */
     public static Painter polygon(Color color) {
-        return (map, canvas) -> {
+        return KeyedPainter.base((map, canvas) -> {
             for (Attributed<Polygon> attributedPolygon : map.polygons()) {
                 canvas.drawPolygon(attributedPolygon.value(), color);
             }
-        };
+        }, KeyedPainter.POLYGONS, null);
     }
     
     /**
@@ -76,11 +95,11 @@ public interface Painter {
      *      Le peintre dessinant les polylignes
      */
     public static Painter line(LineStyle style) {
-        return (map, canvas) -> {
+        return KeyedPainter.base((map, canvas) -> {
             for (Attributed<PolyLine> attributedPolyLine : map.polyLines()) {
                 canvas.drawPolyLine(attributedPolyLine.value(), style);
             }
-        };
+        }, KeyedPainter.POLYLINES, style);
     }
     
     /**
@@ -156,7 +175,7 @@ public interface Painter {
      *      des trous des polygones
      */
     public static Painter outline(LineStyle style) {
-        return (map, canvas) -> {
+        return KeyedPainter.base((map, canvas) -> {
             for (Attributed<Polygon> attributedPolygon : map.polygons()) {
                 Polygon polygon = attributedPolygon.value();
                 canvas.drawPolyLine(polygon.shell(), style);
@@ -164,7 +183,7 @@ public interface Painter {
                     canvas.drawPolyLine(hole, style);
                 }
             }
-        };
+        }, KeyedPainter.POLYGONS, style);
     }
     
     /**
@@ -234,17 +253,11 @@ public interface Painter {
      * @param predicate
      *      Le prédicat qui filtre les éléments à dessiner
      * 
-     * @return (map, canvas) -> {}
+     * @return KeyedPainter.when(this, predicate)
      *      Le peintre dessinant les éléments filtrés
      */
     public default Painter when(Predicate<Attributed<?>> predicate) {
-        return (map, canvas) -> {
-            List<Attributed<Polygon>> polygons = new ArrayList<>(map.polygons());
-            List<Attributed<PolyLine>> polyLines = new ArrayList<>(map.polyLines());
-            polygons.removeIf(p -> !predicate.test(p));
-            polyLines.removeIf(p -> !predicate.test(p));
-            drawMap(new Map(polyLines, polygons), canvas);
-        };
+        return KeyedPainter.when(this, predicate);
     }
     
     /**
@@ -261,14 +274,11 @@ public interface Painter {
      *      Le peintre sur lequel on veut empiler le peintre auquel
      *      on applique la méthode
      * 
-     * @return (map, canvas) -> {}
+     * @return KeyedPainter.above(first, this)
      *      Le peintre composite
      */
     public default Painter above(Painter first) {
-        return (map, canvas) -> {
-            first.drawMap(map, canvas);
-            drawMap(map, canvas);
-        };
+        return KeyedPainter.above(first, this);
     }
     
     /**
@@ -281,16 +291,10 @@ public interface Painter {
      * @author Raja Soufi (247680)
      * @author Andrey Batasov (250149)
      * 
-     * @return (map, canvas) -> {}
+     * @return KeyedPainter.layered(this)
      *      Le peintre dessinant une carte par couches
      */
     public default Painter layered() {
-        return (map, canvas) -> {
-            Painter painter = when(Filters.onLayer(-5));
-            for (int i = -4; i <= 5; i++) {
-                painter = when(Filters.onLayer(i)).above(painter);
-            }
-            painter.drawMap(map, canvas);
-        };
+        return KeyedPainter.layered(this);
     }
 }
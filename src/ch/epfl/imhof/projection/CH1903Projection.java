@@ -22,17 +22,25 @@ public final class CH1903Projection implements Projection {
      * @param point
      *      un PointGeo en coordonnées sphériques
      *
-     * @return new Point(x, y)
+     * @return new Point(x(lambda, phi), y(lambda, phi))
      *       retourne un Point en coordonnées cartésiennes
      *       dans le système CH1903
      */
     @Override
     public Point project(PointGeo point) {
-        double lambda = (toDegrees(point.longitude()) * 3600 - 26782.5) / 10000;
-        double phi = (toDegrees(point.latitude()) * 3600 - 169028.66) / 10000;
-        double x = 600072.37 + 211455.93 * lambda - 10938.51 * lambda * phi - 0.36 * lambda * pow(phi, 2) - 44.54 * pow(lambda, 3);
-        double y = 200147.07 + 308807.95 * phi + 3745.25 * pow(lambda, 2) + 76.63 * pow(phi, 2) - 194.56 * pow(lambda, 2) * phi + 119.79 * pow(phi, 3);
-        return new Point(x, y);
+        double lambda = lambda(point.longitude());
+        double phi = phi(point.latitude());
+        return new Point(x(lambda, phi), y(lambda, phi));
+    }
+    
+    @Override
+    public void project(double[] lonLat, double[] xy, int offset, int count) {
+        for (int i = 2 * offset ; i < 2 * (offset + count) ; i += 2) {
+            double lambda = lambda(lonLat[i]);
+            double phi = phi(lonLat[i + 1]);
+            xy[i] = x(lambda, phi);
+            xy[i + 1] = y(lambda, phi);
+        }
     }
     
     /**
@@ -46,7 +54,7 @@ public final class CH1903Projection implements Projection {
      * @param point
      *      un Point du système CH1903
      *
-     * @return new PointGeo(toRadians((longitude * 100) / 36), toRadians((latitude * 100) / 36))
+     * @return new PointGeo(longitude(x, y), latitude(x, y))
      *       retourne un PointGeo en coordonnées sphériques
      *       sur la surface de la terre
      */
@@ -54,8 +62,50 @@ public final class CH1903Projection implements Projection {
     public PointGeo inverse(Point point) {
         double x = (point.x() - 600000) / 1000000;
         double y = (point.y() - 200000) / 1000000;
-        double longitude = 2.6779094 + 4.728982 * x + 0.791484 * x * y + 0.1306 * x * pow(y, 2) - 0.0436 * pow(x, 3);
-        double latitude = 16.9023892 + 3.238272 * y - 0.270978 * pow(x, 2) - 0.002528 * pow(y, 2) - 0.0447 * pow(x, 2) * y - 0.0140 * pow(y, 3);
-        return new PointGeo(toRadians((longitude * 100) / 36), toRadians((latitude * 100) / 36));
+        return new PointGeo(longitude(x, y), latitude(x, y));
+    }
+    
+    @Override
+    public void inverse(double[] xy, double[] lonLat, int offset, int count) {
+        for (int i = 2 * offset ; i < 2 * (offset + count) ; i += 2) {
+            double x = (xy[i] - 600000) / 1000000;
+            double y = (xy[i + 1] - 200000) / 1000000;
+            lonLat[i] = longitude(x, y);
+            lonLat[i + 1] = latitude(x, y);
+        }
+    }
+    
+    // Les formules de projection, partagées par les versions ponctuelles et
+    // par lots ; les puissances sont calculées par des produits (Math.pow est
+    // bien plus lent)
+    
+    private static double lambda(double longitude) {
+        return (toDegrees(longitude) * 3600 - 26782.5) / 10000;
+    }
+    
+    private static double phi(double latitude) {
+        return (toDegrees(latitude) * 3600 - 169028.66) / 10000;
+    }
+    
+    private static double x(double lambda, double phi) {
+        return 600072.37 + 211455.93 * lambda - 10938.51 * lambda * phi - 0.36 * lambda * (phi * phi) - 44.54 * (lambda * lambda * lambda);
+    }
+    
+    private static double y(double lambda, double phi) {
+        double lambda2 = lambda * lambda;
+        double phi2 = phi * phi;
+        return 200147.07 + 308807.95 * phi + 3745.25 * lambda2 + 76.63 * phi2 - 194.56 * lambda2 * phi + 119.79 * (phi2 * phi);
+    }
+    
+    private static double longitude(double x, double y) {
+        double longitude = 2.6779094 + 4.728982 * x + 0.791484 * x * y + 0.1306 * x * (y * y) - 0.0436 * (x * x * x);
+        return toRadians((longitude * 100) / 36);
+    }
+    
+    private static double latitude(double x, double y) {
+        double x2 = x * x;
+        double y2 = y * y;
+        double latitude = 16.9023892 + 3.238272 * y - 0.270978 * x2 - 0.002528 * y2 - 0.0447 * x2 * y - 0.0140 * (y2 * y);
+        return toRadians((latitude * 100) / 36);
     }
 }
@@ -49,4 +49,14 @@ public final class EquirectangularProjection implements Projection {
     public PointGeo inverse(Point point) {
         return new PointGeo(point.x(), point.y());
     }
+    
+    @Override
+    public void project(double[] lonLat, double[] xy, int offset, int count) {
+        System.arraycopy(lonLat, 2 * offset, xy, 2 * offset, 2 * count);
+    }
+    
+    @Override
+    public void inverse(double[] xy, double[] lonLat, int offset, int count) {
+        System.arraycopy(xy, 2 * offset, lonLat, 2 * offset, 2 * count);
+    }
 }
@@ -38,4 +38,63 @@ public interface Projection {
      *      un Point du système donné
      */
     public PointGeo inverse(Point point);
+    
+    /**
+     * Méthode projettant d'un seul coup plusieurs points de la
+     * surface de la terre, donnés sous forme de paires
+     * (longitude, latitude) en radians, sur le système donné.
+     * Les points d'indices offset à offset + count - 1 sont lus
+     * dans lonLat (aux positions 2i et 2i + 1) et leurs projections
+     * écrites aux mêmes positions dans xy. Aucun objet n'est alloué
+     * par les implémentations qui redéfinissent cette méthode ; la
+     * version par défaut se contente d'appeler project(PointGeo)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param lonLat
+     *      les coordonnées sphériques des points
+     * @param xy
+     *      le tableau dans lequel écrire les coordonnées projetées
+     *      (il peut s'agir du tableau lonLat lui-même)
+     * @param offset
+     *      l'indice du premier point à projeter
+     * @param count
+     *      le nombre de points à projeter
+     */
+    public default void project(double[] lonLat, double[] xy, int offset, int count) {
+        for (int i = 2 * offset ; i < 2 * (offset + count) ; i += 2) {
+            Point point = project(new PointGeo(lonLat[i], lonLat[i + 1]));
+            xy[i] = point.x();
+            xy[i + 1] = point.y();
+        }
+    }
+    
+    /**
+     * Méthode transformant d'un seul coup plusieurs points du
+     * système donné, donnés sous forme de paires (x, y), en points
+     * de la surface de la terre en coordonnées sphériques ; c'est
+     * l'inverse de project(double[], double[], int, int)
+     *
+     * @author Raja Soufi (247680)
+     * @author Andrey Batasov (250149)
+     *
+     * @param xy
+     *      les coordonnées des points dans le système donné
+     * @param lonLat
+     *      le tableau dans lequel écrire les paires (longitude,
+     *      latitude), en radians (il peut s'agir du tableau xy
+     *      lui-même)
+     * @param offset
+     *      l'indice du premier point à transformer
+     * @param count
+     *      le nombre de points à transformer
+     */
+    public default void inverse(double[] xy, double[] lonLat, int offset, int count) {
+        for (int i = 2 * offset ; i < 2 * (offset + count) ; i += 2) {
+            PointGeo point = inverse(new Point(xy[i], xy[i + 1]));
+            lonLat[i] = point.longitude();
+            lonLat[i + 1] = point.latitude();
+        }
+    }
 }